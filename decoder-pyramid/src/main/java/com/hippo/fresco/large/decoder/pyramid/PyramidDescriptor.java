@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.decoder.pyramid;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import javax.annotation.Nullable;
+
+/**
+ * The descriptor of a tile pyramid.
+ * <p>
+ * A pyramid has {@link #levels} levels, level {@code n} is the image
+ * scaled down by {@code 2^n}, it's cut into tiles of {@link #tileSize}.
+ * The tile at column {@code c} and row {@code r} of level {@code n}
+ * covers the source rect
+ * {@code [c * tileSize * 2^n, r * tileSize * 2^n, (c + 1) * tileSize * 2^n, (r + 1) * tileSize * 2^n]},
+ * clipped to the image bounds, and is stored in {@code <tileDir>/<n>/<c>_<r>.<extension>}.
+ * <p>
+ * The descriptor is stored as a UTF-8 text file, starts with {@link #MAGIC}.
+ * A descriptor might come from anywhere, it's only accepted if its
+ * {@code tileDir} is in the root directory given to {@link #read(InputStream, File)}.
+ */
+public final class PyramidDescriptor {
+
+  public static final String MAGIC = "FLPYR";
+  public static final int VERSION = 1;
+
+  public static final String FILE_EXTENSION = "flpyr";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final String KEY_WIDTH = "width";
+  private static final String KEY_HEIGHT = "height";
+  private static final String KEY_TILE_SIZE = "tileSize";
+  private static final String KEY_LEVELS = "levels";
+  private static final String KEY_EXTENSION = "extension";
+  private static final String KEY_TILE_DIR = "tileDir";
+
+  public final int width;
+  public final int height;
+  public final int tileSize;
+  public final int levels;
+  public final String extension;
+  public final File tileDir;
+
+  public PyramidDescriptor(int width, int height, int tileSize, int levels, String extension,
+      File tileDir) {
+    if (width <= 0 || height <= 0 || tileSize <= 0 || levels <= 0) {
+      throw new IllegalArgumentException("Invalid pyramid: " + width + "x" + height +
+          ", tile size " + tileSize + ", levels " + levels);
+    }
+    this.width = width;
+    this.height = height;
+    this.tileSize = tileSize;
+    this.levels = levels;
+    this.extension = extension;
+    this.tileDir = tileDir;
+  }
+
+  /**
+   * Returns the count of levels to let the whole image fit in one tile at the last level.
+   */
+  public static int computeLevels(int width, int height, int tileSize) {
+    int size = Math.max(width, height);
+    int levels = 1;
+    while (size > tileSize) {
+      size = (size + 1) / 2;
+      ++levels;
+    }
+    return levels;
+  }
+
+  /**
+   * Returns the size of the source image covered by a tile at the level.
+   */
+  public int getTileSourceSize(int level) {
+    return tileSize << level;
+  }
+
+  public int getColumnCount(int level) {
+    int step = getTileSourceSize(level);
+    return (width + step - 1) / step;
+  }
+
+  public int getRowCount(int level) {
+    int step = getTileSourceSize(level);
+    return (height + step - 1) / step;
+  }
+
+  public File getTileFile(int level, int column, int row) {
+    return new File(new File(tileDir, Integer.toString(level)),
+        column + "_" + row + "." + extension);
+  }
+
+  public void write(OutputStream os) throws IOException {
+    Writer writer = new OutputStreamWriter(os, UTF_8);
+    writer.write(MAGIC + " " + VERSION + "\n");
+    writer.write(KEY_WIDTH + "=" + width + "\n");
+    writer.write(KEY_HEIGHT + "=" + height + "\n");
+    writer.write(KEY_TILE_SIZE + "=" + tileSize + "\n");
+    writer.write(KEY_LEVELS + "=" + levels + "\n");
+    writer.write(KEY_EXTENSION + "=" + extension + "\n");
+    writer.write(KEY_TILE_DIR + "=" + tileDir.getAbsolutePath() + "\n");
+    writer.flush();
+  }
+
+  /**
+   * Reads a descriptor. Returns {@code null} if it's not a valid descriptor,
+   * or its tile directory isn't in the root directory.
+   *
+   * @param rootDir the directory where all pyramids are stored
+   */
+  @Nullable
+  public static PyramidDescriptor read(InputStream is, File rootDir) {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(is, UTF_8));
+    try {
+      if (!(MAGIC + " " + VERSION).equals(reader.readLine())) {
+        return null;
+      }
+
+      int width = -1;
+      int height = -1;
+      int tileSize = -1;
+      int levels = -1;
+      String extension = null;
+      String tileDir = null;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int index = line.indexOf('=');
+        if (index < 0) {
+          continue;
+        }
+        String key = line.substring(0, index);
+        String value = line.substring(index + 1);
+        if (KEY_WIDTH.equals(key)) {
+          width = Integer.parseInt(value);
+        } else if (KEY_HEIGHT.equals(key)) {
+          height = Integer.parseInt(value);
+        } else if (KEY_TILE_SIZE.equals(key)) {
+          tileSize = Integer.parseInt(value);
+        } else if (KEY_LEVELS.equals(key)) {
+          levels = Integer.parseInt(value);
+        } else if (KEY_EXTENSION.equals(key)) {
+          extension = value;
+        } else if (KEY_TILE_DIR.equals(key)) {
+          tileDir = value;
+        }
+      }
+
+      if (extension == null || tileDir == null || extension.indexOf(File.separatorChar) >= 0) {
+        return null;
+      }
+      File dir = new File(tileDir).getCanonicalFile();
+      if (!isInDirectory(dir, rootDir.getCanonicalFile())) {
+        return null;
+      }
+      return new PyramidDescriptor(width, height, tileSize, levels, extension, dir);
+    } catch (IOException | IllegalArgumentException e) {
+      // NumberFormatException is an IllegalArgumentException
+      return null;
+    }
+  }
+
+  private static boolean isInDirectory(File file, File dir) {
+    for (File parent = file; parent != null; parent = parent.getParentFile()) {
+      if (parent.equals(dir)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
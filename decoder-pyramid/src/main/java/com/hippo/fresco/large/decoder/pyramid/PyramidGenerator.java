@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.decoder.pyramid;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import com.facebook.common.logging.FLog;
+import com.hippo.fresco.large.ImageRegionDecoder;
+import com.hippo.fresco.large.ImageRegionDecoderCompat;
+import com.hippo.fresco.large.RegionDecodeOptions;
+import com.hippo.fresco.large.SubsamplingDrawable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Generates a tile pyramid from an {@link ImageRegionDecoder}.
+ * <p>
+ * Level 0 is decoded from the source tile by tile. Each tile of a coarser
+ * level is built from the four tiles of the finer level below it,
+ * so the source is only read once. For lossy formats, a PNG copy of each
+ * finer level is kept while building the coarser one, otherwise the loss
+ * would compound level by level.
+ * <p>
+ * It takes a while for a large image, call it on a background thread.
+ */
+public final class PyramidGenerator {
+  private PyramidGenerator() {}
+
+  private static final Class<?> TAG = PyramidGenerator.class;
+
+  /**
+   * The tile size of {@link SubsamplingDrawable}, each tile it requests
+   * is read from one tile file without any scaling.
+   */
+  public static final int DEFAULT_TILE_SIZE = SubsamplingDrawable.TILE_SIZE;
+
+  // Lossless copies of finer levels, removed when the pyramid is generated
+  private static final String WORK_DIR_NAME = "work";
+
+  /**
+   * Generates a pyramid in the directory with {@link #DEFAULT_TILE_SIZE}.
+   *
+   * @see #generate(ImageRegionDecoder, File, int, Bitmap.CompressFormat, int)
+   */
+  public static File generate(ImageRegionDecoder source, File dir,
+      Bitmap.CompressFormat format, int quality) throws IOException {
+    return generate(source, dir, DEFAULT_TILE_SIZE, format, quality);
+  }
+
+  /**
+   * Generates a pyramid in the directory.
+   * Returns the descriptor file, load it with Fresco to display the pyramid.
+   *
+   * @param source the decoder of the source image, the caller still owns it
+   * @param dir the directory to store tiles and the descriptor, it must be in the root
+   *            directory of {@link PyramidImageRegionDecoderFactory} to be read
+   * @param tileSize the size of tiles, use {@link #DEFAULT_TILE_SIZE} for
+   *                 {@link SubsamplingDrawable}, otherwise each region it requests
+   *                 is composed from several tiles
+   * @param format the format of tile files
+   * @param quality the quality of tile files, see {@link Bitmap#compress}
+   */
+  public static File generate(ImageRegionDecoder source, File dir, int tileSize,
+      Bitmap.CompressFormat format, int quality) throws IOException {
+    if (tileSize != DEFAULT_TILE_SIZE) {
+      FLog.w(TAG, "Tile size %d isn't the drawable tile size %d, regions are composed",
+          tileSize, DEFAULT_TILE_SIZE);
+    }
+
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int levels = PyramidDescriptor.computeLevels(width, height, tileSize);
+    PyramidDescriptor descriptor = new PyramidDescriptor(width, height, tileSize, levels,
+        getExtension(format), dir);
+
+    Bitmap.Config config = format == Bitmap.CompressFormat.JPEG
+        ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+
+    // Coarser levels are built from lossless copies of finer levels
+    boolean lossless = format == Bitmap.CompressFormat.PNG;
+    File workDir = new File(dir, WORK_DIR_NAME);
+
+    // Level 0
+    makeLevelDir(descriptor, 0);
+    if (!lossless && levels > 1) {
+      makeDir(new File(workDir, "0"));
+    }
+    Rect rect = new Rect();
+    RegionDecodeOptions options = new RegionDecodeOptions();
+    options.inPreferredConfig = config;
+    for (int row = 0, rows = descriptor.getRowCount(0); row < rows; row++) {
+      for (int column = 0, columns = descriptor.getColumnCount(0); column < columns; column++) {
+        getTileRect(descriptor, 0, column, row, rect);
+        Bitmap bitmap = ImageRegionDecoderCompat.decode(source, rect, options);
+        if (bitmap == null) {
+          throw new IOException("Can't decode " + rect);
+        }
+        try {
+          writeTile(descriptor.getTileFile(0, column, row), bitmap, format, quality);
+          if (!lossless && levels > 1) {
+            writeTile(getWorkTileFile(workDir, 0, column, row), bitmap,
+                Bitmap.CompressFormat.PNG, 100);
+          }
+        } finally {
+          bitmap.recycle();
+        }
+      }
+    }
+
+    // Coarser levels
+    Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    RectF dst = new RectF();
+    BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
+    bitmapOptions.inPreferredConfig = config;
+    for (int level = 1; level < levels; level++) {
+      makeLevelDir(descriptor, level);
+      boolean keepWorkTiles = !lossless && level < levels - 1;
+      if (keepWorkTiles) {
+        makeDir(new File(workDir, Integer.toString(level)));
+      }
+      int childColumns = descriptor.getColumnCount(level - 1);
+      int childRows = descriptor.getRowCount(level - 1);
+      for (int row = 0, rows = descriptor.getRowCount(level); row < rows; row++) {
+        for (int column = 0, columns = descriptor.getColumnCount(level);
+            column < columns; column++) {
+          getTileRect(descriptor, level, column, row, rect);
+          int sample = 1 << level;
+          Bitmap bitmap = Bitmap.createBitmap(
+              RegionDecodeOptions.getSampledSize(rect.width(), sample),
+              RegionDecodeOptions.getSampledSize(rect.height(), sample), config);
+          try {
+            Canvas canvas = new Canvas(bitmap);
+            for (int i = 0; i < 4; i++) {
+              int childColumn = column * 2 + (i & 1);
+              int childRow = row * 2 + (i >> 1);
+              if (childColumn >= childColumns || childRow >= childRows) {
+                continue;
+              }
+              File childFile = lossless
+                  ? descriptor.getTileFile(level - 1, childColumn, childRow)
+                  : getWorkTileFile(workDir, level - 1, childColumn, childRow);
+              Bitmap child = BitmapFactory.decodeFile(childFile.getPath(), bitmapOptions);
+              if (child == null) {
+                throw new IOException("Can't read tile " + (level - 1) + "/" +
+                    childColumn + "_" + childRow);
+              }
+              // Half of the child tile size in this tile
+              float left = (i & 1) * tileSize / 2.0f;
+              float top = (i >> 1) * tileSize / 2.0f;
+              dst.set(left, top, left + child.getWidth() / 2.0f, top + child.getHeight() / 2.0f);
+              canvas.drawBitmap(child, null, dst, paint);
+              child.recycle();
+            }
+            writeTile(descriptor.getTileFile(level, column, row), bitmap, format, quality);
+            if (keepWorkTiles) {
+              writeTile(getWorkTileFile(workDir, level, column, row), bitmap,
+                  Bitmap.CompressFormat.PNG, 100);
+            }
+          } finally {
+            bitmap.recycle();
+          }
+        }
+      }
+      if (!lossless) {
+        deleteDir(new File(workDir, Integer.toString(level - 1)));
+      }
+    }
+    if (!lossless) {
+      deleteDir(workDir);
+    }
+
+    // Write the descriptor at last, a descriptor means a complete pyramid
+    File file = new File(dir, "pyramid." + PyramidDescriptor.FILE_EXTENSION);
+    OutputStream os = new FileOutputStream(file);
+    try {
+      descriptor.write(os);
+    } finally {
+      os.close();
+    }
+    return file;
+  }
+
+  private static void getTileRect(PyramidDescriptor descriptor, int level, int column, int row,
+      Rect rect) {
+    int step = descriptor.getTileSourceSize(level);
+    rect.left = column * step;
+    rect.top = row * step;
+    rect.right = Math.min(rect.left + step, descriptor.width);
+    rect.bottom = Math.min(rect.top + step, descriptor.height);
+  }
+
+  private static void makeLevelDir(PyramidDescriptor descriptor, int level) throws IOException {
+    makeDir(new File(descriptor.tileDir, Integer.toString(level)));
+  }
+
+  private static void makeDir(File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't create " + dir);
+    }
+  }
+
+  private static void deleteDir(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          deleteDir(file);
+        } else {
+          file.delete();
+        }
+      }
+    }
+    dir.delete();
+  }
+
+  private static File getWorkTileFile(File workDir, int level, int column, int row) {
+    return new File(new File(workDir, Integer.toString(level)), column + "_" + row + ".png");
+  }
+
+  private static void writeTile(File file, Bitmap bitmap, Bitmap.CompressFormat format,
+      int quality) throws IOException {
+    OutputStream os = new FileOutputStream(file);
+    try {
+      if (!bitmap.compress(format, quality, os)) {
+        throw new IOException("Can't compress tile " + file);
+      }
+    } finally {
+      os.close();
+    }
+  }
+
+  private static String getExtension(Bitmap.CompressFormat format) {
+    switch (format) {
+      case JPEG:
+        return "jpg";
+      case PNG:
+        return "png";
+      default:
+        return "webp";
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.decoder.pyramid;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import com.facebook.imageformat.ImageFormat;
+import java.nio.charset.Charset;
+import javax.annotation.Nullable;
+
+/**
+ * The {@link ImageFormat} of {@link PyramidDescriptor} files.
+ * Register it with {@link #CHECKER}, {@link PyramidImageSizeDecoder}
+ * and {@link PyramidImageRegionDecoderFactory}.
+ */
+public final class PyramidImageFormat {
+  private PyramidImageFormat() {}
+
+  public static final ImageFormat PYRAMID =
+      new ImageFormat("PYRAMID", PyramidDescriptor.FILE_EXTENSION);
+
+  public static final ImageFormat.FormatChecker CHECKER = new ImageFormat.FormatChecker() {
+
+    private final byte[] header = PyramidDescriptor.MAGIC.getBytes(Charset.forName("US-ASCII"));
+
+    @Override
+    public int getHeaderSize() {
+      return header.length;
+    }
+
+    @Nullable
+    @Override
+    public ImageFormat determineFormat(byte[] headerBytes, int headerSize) {
+      if (headerSize < header.length) {
+        return null;
+      }
+      for (int i = 0; i < header.length; i++) {
+        if (headerBytes[i] != header[i]) {
+          return null;
+        }
+      }
+      return PYRAMID;
+    }
+  };
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.decoder.pyramid;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import com.facebook.common.logging.FLog;
+import com.hippo.fresco.large.ExtendedImageRegionDecoder;
+import com.hippo.fresco.large.RegionDecodeOptions;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link ExtendedImageRegionDecoder} reading a tile pyramid described by
+ * a {@link PyramidDescriptor}.
+ * <p>
+ * If the region is exactly one tile of the level matching the sample size,
+ * the tile file is decoded as is, without any scaling. Otherwise the region
+ * is composed from the tiles of the nearest finer level.
+ * <p>
+ * Tile files are read independently, so regions are decoded in parallel.
+ * A composed region checks the cancellation before each tile.
+ * The decode fails if any tile file can't be read.
+ */
+public class PyramidImageRegionDecoder implements ExtendedImageRegionDecoder {
+
+  private static final Class<?> TAG = PyramidImageRegionDecoder.class;
+
+  private final PyramidDescriptor descriptor;
+
+  public PyramidImageRegionDecoder(PyramidDescriptor descriptor) {
+    this.descriptor = descriptor;
+  }
+
+  public PyramidDescriptor getDescriptor() {
+    return descriptor;
+  }
+
+  @Override
+  public int getWidth() {
+    return descriptor.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return descriptor.height;
+  }
+
+  @Nullable
+  @Override
+  public Bitmap decode(Rect rect) {
+    return decode(rect, null);
+  }
+
+  @Nullable
+  @Override
+  public Bitmap decode(Rect rect, @Nullable RegionDecodeOptions options) {
+    int sample = options != null ? Math.max(1, options.inSampleSize) : 1;
+    Bitmap.Config config = options != null ? options.inPreferredConfig : null;
+    Bitmap inBitmap = options != null ? options.inBitmap : null;
+
+    // The finest level not finer than the sample
+    int level = 0;
+    while (level + 1 < descriptor.levels && (2 << level) <= sample) {
+      ++level;
+    }
+
+    int step = descriptor.getTileSourceSize(level);
+    if (sample == (1 << level) && rect.left % step == 0 && rect.top % step == 0 &&
+        rect.right == Math.min(rect.left + step, descriptor.width) &&
+        rect.bottom == Math.min(rect.top + step, descriptor.height)) {
+      return decodeTile(level, rect.left / step, rect.top / step, config, inBitmap);
+    }
+
+    return compose(rect, sample, level, config, options);
+  }
+
+  @Nullable
+  private Bitmap decodeTile(int level, int column, int row, @Nullable Bitmap.Config config,
+      @Nullable Bitmap inBitmap) {
+    String path = descriptor.getTileFile(level, column, row).getPath();
+    BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+      // Make it reusable
+      bitmapOptions.inMutable = true;
+      bitmapOptions.inBitmap = inBitmap;
+    }
+    if (config != null) {
+      bitmapOptions.inPreferredConfig = config;
+    }
+
+    try {
+      return BitmapFactory.decodeFile(path, bitmapOptions);
+    } catch (IllegalArgumentException e) {
+      if (bitmapOptions.inBitmap != null) {
+        // The inBitmap can't be reused, the caller still owns it
+        bitmapOptions.inBitmap = null;
+        return BitmapFactory.decodeFile(path, bitmapOptions);
+      }
+      throw e;
+    }
+  }
+
+  // Draws all tiles of the level intersecting the rect
+  @Nullable
+  private Bitmap compose(Rect rect, int sample, int level, @Nullable Bitmap.Config config,
+      @Nullable RegionDecodeOptions options) {
+    int width = RegionDecodeOptions.getSampledSize(rect.width(), sample);
+    int height = RegionDecodeOptions.getSampledSize(rect.height(), sample);
+    Bitmap bitmap;
+    try {
+      bitmap = Bitmap.createBitmap(width, height,
+          config != null ? config : Bitmap.Config.ARGB_8888);
+    } catch (OutOfMemoryError e) {
+      return null;
+    }
+
+    Canvas canvas = new Canvas(bitmap);
+    Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    RectF dst = new RectF();
+    int step = descriptor.getTileSourceSize(level);
+    float scale = 1.0f / sample;
+    int startColumn = Math.max(0, rect.left / step);
+    int endColumn = Math.min(descriptor.getColumnCount(level), (rect.right + step - 1) / step);
+    int startRow = Math.max(0, rect.top / step);
+    int endRow = Math.min(descriptor.getRowCount(level), (rect.bottom + step - 1) / step);
+    for (int row = startRow; row < endRow; row++) {
+      for (int column = startColumn; column < endColumn; column++) {
+        if (options != null && options.isCancelled()) {
+          bitmap.recycle();
+          return null;
+        }
+        Bitmap tile = decodeTile(level, column, row, config, null);
+        if (tile == null) {
+          // A missing tile, don't show a hole
+          FLog.w(TAG, "Can't read tile %d/%d_%d", level, column, row);
+          bitmap.recycle();
+          return null;
+        }
+        int left = column * step;
+        int top = row * step;
+        int right = Math.min(left + step, descriptor.width);
+        int bottom = Math.min(top + step, descriptor.height);
+        dst.set((left - rect.left) * scale, (top - rect.top) * scale,
+            (right - rect.left) * scale, (bottom - rect.top) * scale);
+        canvas.drawBitmap(tile, null, dst, paint);
+        tile.recycle();
+      }
+    }
+
+    return bitmap;
+  }
+
+  // Tile files are opened for each decode, nothing is held
+  @Override
+  public int getSizeInBytes() {
+    return 0;
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.decoder.pyramid;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.util.Pair;
+import com.facebook.common.internal.Closeables;
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.hippo.fresco.large.ImageSizeDecoder;
+import java.io.File;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+public class PyramidImageSizeDecoder implements ImageSizeDecoder {
+
+  private final File rootDir;
+
+  /**
+   * @param rootDir the directory where all pyramids are stored,
+   *                descriptors pointing out of it are rejected
+   */
+  public PyramidImageSizeDecoder(File rootDir) {
+    this.rootDir = rootDir;
+  }
+
+  @Nullable
+  @Override
+  public Pair<Integer, Integer> decode(EncodedImage encodedImage, int length) {
+    InputStream is = encodedImage.getInputStream();
+    if (is == null) {
+      return null;
+    }
+    PyramidDescriptor descriptor;
+    try {
+      descriptor = PyramidDescriptor.read(is, rootDir);
+    } finally {
+      Closeables.closeQuietly(is);
+    }
+    if (descriptor == null) {
+      return null;
+    }
+    return new Pair<>(descriptor.width, descriptor.height);
+  }
+}
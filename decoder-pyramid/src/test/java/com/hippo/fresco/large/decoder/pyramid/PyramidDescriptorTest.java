@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.decoder.pyramid;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PyramidDescriptorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File rootDir;
+  private File outsideDir;
+
+  @Before
+  public void setUp() throws IOException {
+    rootDir = folder.newFolder("root");
+    outsideDir = folder.newFolder("outside");
+  }
+
+  private PyramidDescriptor read(String extension, String tileDir) {
+    String text = PyramidDescriptor.MAGIC + " " + PyramidDescriptor.VERSION + "\n" +
+        "width=1000\n" +
+        "height=800\n" +
+        "tileSize=512\n" +
+        "levels=2\n" +
+        "extension=" + extension + "\n" +
+        "tileDir=" + tileDir + "\n";
+    byte[] bytes = text.getBytes(Charset.forName("UTF-8"));
+    return PyramidDescriptor.read(new ByteArrayInputStream(bytes), rootDir);
+  }
+
+  @Test
+  public void inRoot() throws IOException {
+    File tileDir = new File(rootDir, "image");
+    PyramidDescriptor descriptor = read("jpg", tileDir.getPath());
+    assertNotNull(descriptor);
+    assertEquals(1000, descriptor.width);
+    assertEquals(800, descriptor.height);
+    assertEquals(512, descriptor.tileSize);
+    assertEquals(2, descriptor.levels);
+    assertEquals(tileDir.getCanonicalFile(), descriptor.tileDir);
+  }
+
+  @Test
+  public void writeAndRead() throws IOException {
+    PyramidDescriptor descriptor =
+        new PyramidDescriptor(1000, 800, 512, 2, "jpg", new File(rootDir, "image"));
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    descriptor.write(os);
+    PyramidDescriptor result =
+        PyramidDescriptor.read(new ByteArrayInputStream(os.toByteArray()), rootDir);
+    assertNotNull(result);
+    assertEquals(descriptor.tileDir.getCanonicalFile(), result.tileDir);
+  }
+
+  @Test
+  public void parentPath() {
+    assertNull(read("jpg", rootDir.getPath() + "/../outside"));
+    assertNull(read("jpg", rootDir.getPath() + "/image/../../outside"));
+  }
+
+  @Test
+  public void absolutePathOutsideRoot() {
+    assertNull(read("jpg", outsideDir.getAbsolutePath()));
+    assertNull(read("jpg", "/"));
+  }
+
+  @Test
+  public void relativePath() {
+    // Relative paths are resolved against the working directory, not the root
+    assertNull(read("jpg", "image"));
+  }
+
+  @Test
+  public void symlinkOutsideRoot() throws IOException {
+    File link = new File(rootDir, "link");
+    try {
+      Files.createSymbolicLink(link.toPath(), outsideDir.toPath());
+    } catch (UnsupportedOperationException | IOException e) {
+      Assume.assumeNoException(e);
+    }
+    assertNull(read("jpg", link.getPath()));
+    assertNull(read("jpg", new File(link, "image").getPath()));
+  }
+
+  @Test
+  public void separatorInExtension() {
+    File tileDir = new File(rootDir, "image");
+    assertNull(read("jpg/../../../outside", tileDir.getPath()));
+  }
+
+  @Test
+  public void invalid() {
+    byte[] bytes = "FLPYR 0\n".getBytes(Charset.forName("UTF-8"));
+    assertNull(PyramidDescriptor.read(new ByteArrayInputStream(bytes), rootDir));
+    assertNull(read("jpg", ""));
+  }
+}
@@ -20,19 +20,148 @@ package com.hippo.fresco.large.decoder.skia;
  * Created by Hippo on 5/22/2017.
  */
 
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
 import com.facebook.imagepipeline.common.ImageDecodeOptions;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.image.QualityInfo;
+import com.hippo.fresco.large.ClosableLargeImage;
+import com.hippo.fresco.large.DiskTileCache;
 import com.hippo.fresco.large.ImageRegionDecoder;
 import com.hippo.fresco.large.ImageRegionDecoderFactory;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import javax.annotation.Nullable;
 
+/**
+ * Creates {@link SkipImageRegionDecoder}s for images from the pipeline.
+ * <p>
+ * Images from the pipeline are held in memory as {@link EncodedImage}s.
+ * For local images, {@link #createLargeImage(Context, Uri, boolean, boolean)}
+ * creates a large image from the uri without the pipeline,
+ * only the file descriptor is held, the encoded bytes aren't.
+ * Decoders of uris are always single-instance, see
+ * {@link SkipImageRegionDecoder#create(ParcelFileDescriptor, MemoryTrimmableRegistry)}.
+ */
 public class SkiaImageRegionDecoderFactory implements ImageRegionDecoderFactory {
 
+  private final int maxDecoderCount;
+  @Nullable
+  private final MemoryTrimmableRegistry registry;
+
+  /**
+   * Creates a factory for single-instance decoders.
+   */
+  public SkiaImageRegionDecoderFactory() {
+    this(1, null);
+  }
+
+  /**
+   * Creates a factory for multi-instance decoders, the max count of
+   * {@code BitmapRegionDecoder}s for each image is the count of cores.
+   *
+   * @param registry the registry to trim idle decoders, could be {@code null}
+   */
+  public SkiaImageRegionDecoderFactory(@Nullable MemoryTrimmableRegistry registry) {
+    this(Runtime.getRuntime().availableProcessors(), registry);
+  }
+
+  /**
+   * @param maxDecoderCount the max count of {@code BitmapRegionDecoder}s for each image,
+   *                        {@code 1} for single-instance decoders
+   * @param registry the registry to trim idle decoders, could be {@code null}
+   */
+  public SkiaImageRegionDecoderFactory(int maxDecoderCount,
+      @Nullable MemoryTrimmableRegistry registry) {
+    this.maxDecoderCount = maxDecoderCount;
+    this.registry = registry;
+  }
+
   @Nullable
   @Override
   public ImageRegionDecoder createImageRegionDecoder(EncodedImage encodedImage, int length,
       QualityInfo qualityInfo, ImageDecodeOptions options) {
-    return SkipImageRegionDecoder.create(encodedImage);
+    return SkipImageRegionDecoder.create(encodedImage, maxDecoderCount, registry);
+  }
+
+  /**
+   * Creates a decoder for a {@code file} or {@code content} uri.
+   * The file is read through its descriptor, the encoded bytes aren't held in memory.
+   * Returns {@code null} for other schemes, or if the file can't be decoded.
+   */
+  @Nullable
+  public ImageRegionDecoder createImageRegionDecoder(Context context, Uri uri) {
+    ParcelFileDescriptor pfd = openFileDescriptor(context, uri);
+    if (pfd == null) {
+      return null;
+    }
+    return SkipImageRegionDecoder.create(pfd, registry);
+  }
+
+  /**
+   * Creates a large image for a {@code file} or {@code content} uri without the image key.
+   *
+   * @see #createLargeImage(Context, Uri, boolean, boolean)
+   */
+  @Nullable
+  public ClosableLargeImage createLargeImage(Context context, Uri uri, boolean opaque) {
+    return createLargeImage(context, uri, opaque, false);
+  }
+
+  /**
+   * Creates a large image for a {@code file} or {@code content} uri, like
+   * {@link #createImageRegionDecoder(Context, Uri)}. Show it with
+   * {@link com.hippo.fresco.large.LargeDrawableFactory#createLargeDrawable(ClosableLargeImage)}.
+   *
+   * @param opaque {@code true} if the image has no alpha channel
+   * @param computeImageKey {@code true} to compute the image key for {@link DiskTileCache},
+   *                        it reads the whole file. Only set it if a disk tile cache is used.
+   */
+  @Nullable
+  public ClosableLargeImage createLargeImage(Context context, Uri uri, boolean opaque,
+      boolean computeImageKey) {
+    ParcelFileDescriptor pfd = openFileDescriptor(context, uri);
+    if (pfd == null) {
+      return null;
+    }
+    String imageKey = computeImageKey ? computeImageKey(pfd) : null;
+    SkipImageRegionDecoder decoder = SkipImageRegionDecoder.create(pfd, registry);
+    return decoder != null ? new ClosableLargeImage(decoder, opaque, imageKey) : null;
+  }
+
+  @Nullable
+  private static ParcelFileDescriptor openFileDescriptor(Context context, Uri uri) {
+    String scheme = uri.getScheme();
+    if (!ContentResolver.SCHEME_FILE.equals(scheme) &&
+        !ContentResolver.SCHEME_CONTENT.equals(scheme)) {
+      return null;
+    }
+    try {
+      return context.getContentResolver().openFileDescriptor(uri, "r");
+    } catch (FileNotFoundException | SecurityException e) {
+      return null;
+    }
+  }
+
+  // Computes the key for DiskTileCache, then rewinds the file for the decoder
+  @Nullable
+  private static String computeImageKey(ParcelFileDescriptor pfd) {
+    long size = pfd.getStatSize();
+    if (size <= 0 || size > Integer.MAX_VALUE) {
+      return null;
+    }
+    // It doesn't own the descriptor, don't close it
+    FileInputStream is = new FileInputStream(pfd.getFileDescriptor());
+    String imageKey = DiskTileCache.computeImageKey(is, (int) size);
+    try {
+      is.getChannel().position(0);
+    } catch (IOException e) {
+      return null;
+    }
+    return imageKey;
   }
 }
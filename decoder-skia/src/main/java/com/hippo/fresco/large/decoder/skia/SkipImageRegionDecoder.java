@@ -23,55 +23,634 @@ package com.hippo.fresco.large.decoder.skia;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmable;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.common.memory.PooledByteBufferInputStream;
+import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.image.EncodedImage;
-import com.hippo.fresco.large.ImageRegionDecoder;
+import com.facebook.imageutils.BitmapUtil;
+import com.hippo.fresco.large.ExtendedImageRegionDecoder;
+import com.hippo.fresco.large.RegionDecodeOptions;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nullable;
 
-public class SkipImageRegionDecoder implements ImageRegionDecoder {
+/**
+ * An {@link ExtendedImageRegionDecoder} backed by {@link BitmapRegionDecoder}.
+ * <p>
+ * {@code BitmapRegionDecoder} serializes {@code decodeRegion()} calls.
+ * In multi-instance mode, it keeps a pool of {@code BitmapRegionDecoder}s
+ * over the same encoded bytes, each {@link #decode(Rect)} call takes
+ * one of them, so regions could be decoded in parallel.
+ * The pool grows lazily, idle decoders are released in {@link #trim(MemoryTrimType)}.
+ * <p>
+ * {@code BitmapRegionDecoder.newInstance(InputStream)} copies the whole stream
+ * to native memory. A decoder created from a file, see {@link #create(String)}
+ * and {@link #create(ParcelFileDescriptor, MemoryTrimmableRegistry)},
+ * reads the file descriptor instead, the encoded bytes aren't copied.
+ * <p>
+ * {@code decodeRegion()} can't be interrupted. If the decode could be cancelled,
+ * see {@link RegionDecodeOptions#cancellationToken}, a region taller than two
+ * stripes of 128 rows, like most tiles of {@code SubsamplingDrawable}, is decoded
+ * in stripes, the decode is given up between stripes once it's cancelled.
+ * Other regions are decoded into the {@code inBitmap} directly.
+ */
+public class SkipImageRegionDecoder implements ExtendedImageRegionDecoder, MemoryTrimmable {
+
+  // The count of decoded rows in a stripe, a quarter of a full tile
+  private static final int STRIPE_HEIGHT = 128;
+
+  // Stripes replace all pixels below them, stale pixels of a reused bitmap included
+  private static final Paint STRIPE_PAINT = new Paint();
 
-  private BitmapRegionDecoder decoder;
+  static {
+    STRIPE_PAINT.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+  }
+
+  private final int width;
+  private final int height;
+  // The max bytes of encoded data copied by BitmapRegionDecoders
+  private final int sizeInBytes;
+
+  // The source to create more decoders, null in single-instance mode
+  @Nullable
+  private Source source;
+  @Nullable
+  private final MemoryTrimmableRegistry registry;
+
+  private final ArrayDeque<PooledDecoder> idleDecoders = new ArrayDeque<>();
+  private int maxDecoderCount;
+  private int decoderCount;
+  private boolean closed;
 
   public SkipImageRegionDecoder(BitmapRegionDecoder decoder) {
-    this.decoder = decoder;
+    this(decoder, null, 0, 1, null);
+  }
+
+  /**
+   * @param encodedSize the bytes of encoded data copied by each {@code BitmapRegionDecoder},
+   *                    {@code 0} if it reads a file
+   */
+  private SkipImageRegionDecoder(BitmapRegionDecoder decoder, @Nullable Source source,
+      int encodedSize, int maxDecoderCount, @Nullable MemoryTrimmableRegistry registry) {
+    this.width = decoder.getWidth();
+    this.height = decoder.getHeight();
+    this.source = source;
+    this.maxDecoderCount = source != null ? Math.max(1, maxDecoderCount) : 1;
+    this.sizeInBytes =
+        (int) Math.min(Integer.MAX_VALUE, (long) encodedSize * this.maxDecoderCount);
+    this.registry = registry;
+
+    idleDecoders.push(new PooledDecoder(decoder));
+    decoderCount = 1;
+
+    if (registry != null) {
+      registry.registerMemoryTrimmable(this);
+    }
   }
 
   @Override
   public int getWidth() {
-    return decoder.getWidth();
+    return width;
   }
 
   @Override
   public int getHeight() {
-    return decoder.getHeight();
+    return height;
+  }
+
+  /**
+   * Returns the encoded bytes copied by all {@code BitmapRegionDecoder}s
+   * if the pool is full. Decoders reading a file copy nothing.
+   */
+  @Override
+  public int getSizeInBytes() {
+    return sizeInBytes;
   }
 
   @Nullable
   @Override
   public Bitmap decode(Rect rect) {
-    return decoder.decodeRegion(rect, null);
+    return decode(rect, null);
   }
 
+  @Nullable
   @Override
-  public void close() {
-    decoder.recycle();
+  public Bitmap decode(Rect rect, @Nullable RegionDecodeOptions options) {
+    if (options != null && options.isCancelled()) {
+      return null;
+    }
+    PooledDecoder decoder = obtainDecoder();
+    if (decoder == null) {
+      return null;
+    }
+    try {
+      if (shouldDecodeInStripes(rect, options)) {
+        return decodeInStripes(decoder, rect, options);
+      }
+      return decodeRegion(decoder.decoder, rect, options);
+    } finally {
+      releaseDecoder(decoder);
+    }
+  }
+
+  // Only a cancellable region taller than two stripes is worth the copy from stripes.
+  // Stripe bitmaps are reused since Jelly Bean.
+  private static boolean shouldDecodeInStripes(Rect rect, @Nullable RegionDecodeOptions options) {
+    if (options == null || options.cancellationToken == null ||
+        Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+      return false;
+    }
+    int sample = Math.max(1, options.inSampleSize);
+    return rect.height() / sample > 2 * STRIPE_HEIGHT;
   }
 
   @Nullable
-  public static SkipImageRegionDecoder create(EncodedImage encodedImage) {
-    InputStream is = encodedImage.getInputStream();
-    if (is != null) {
+  private static Bitmap decodeInStripes(PooledDecoder decoder, Rect rect,
+      RegionDecodeOptions options) {
+    int sample = Math.max(1, options.inSampleSize);
+    int stripeSourceHeight = STRIPE_HEIGHT * sample;
+    Bitmap.Config config = options.inPreferredConfig != null
+        ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+    int width = RegionDecodeOptions.getSampledSize(rect.width(), sample);
+    int height = RegionDecodeOptions.getSampledSize(rect.height(), sample);
+    Bitmap bitmap = fitBitmap(options.inBitmap, width, height, config);
+    if (bitmap == null) {
       try {
-        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(is, false);
-        if (decoder != null) {
-          return new SkipImageRegionDecoder(decoder);
+        bitmap = Bitmap.createBitmap(width, height, config);
+      } catch (OutOfMemoryError e) {
+        return null;
+      }
+    }
+
+    Canvas canvas = decoder.canvas;
+    canvas.setBitmap(bitmap);
+    RegionDecodeOptions stripeOptions = decoder.stripeOptions;
+    stripeOptions.inSampleSize = sample;
+    stripeOptions.inPreferredConfig = config;
+    Rect stripeRect = decoder.stripeRect;
+    stripeRect.left = rect.left;
+    stripeRect.right = rect.right;
+    boolean completed = false;
+    try {
+      for (int top = rect.top; top < rect.bottom; top += stripeSourceHeight) {
+        if (options.isCancelled()) {
+          return null;
+        }
+        stripeRect.top = top;
+        stripeRect.bottom = Math.min(top + stripeSourceHeight, rect.bottom);
+        // The stripe bitmap is kept by the decoder for next stripes and regions
+        stripeOptions.inBitmap = decoder.stripe;
+        Bitmap stripe = decodeRegion(decoder.decoder, stripeRect, stripeOptions);
+        if (stripe == null) {
+          return null;
         }
-      } catch (IOException e) {
-        // Ignore
+        if (stripe != decoder.stripe) {
+          if (decoder.stripe != null) {
+            decoder.stripe.recycle();
+          }
+          decoder.stripe = stripe;
+        }
+        canvas.drawBitmap(stripe, 0, (top - rect.top) / sample, STRIPE_PAINT);
+      }
+      completed = true;
+      return bitmap;
+    } finally {
+      canvas.setBitmap(null);
+      stripeOptions.inBitmap = null;
+      if (!completed && bitmap != options.inBitmap) {
+        bitmap.recycle();
+      }
+    }
+  }
+
+  @Nullable
+  private static Bitmap decodeRegion(BitmapRegionDecoder decoder, Rect rect,
+      @Nullable RegionDecodeOptions options) {
+    BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+      // Make it reusable
+      bitmapOptions.inMutable = true;
+    }
+    if (options != null) {
+      bitmapOptions.inSampleSize = options.inSampleSize;
+      if (options.inPreferredConfig != null) {
+        bitmapOptions.inPreferredConfig = options.inPreferredConfig;
+      }
+      // BitmapRegionDecoder supports inBitmap since Jelly Bean
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && options.inBitmap != null) {
+        int sample = Math.max(1, options.inSampleSize);
+        bitmapOptions.inBitmap = fitBitmap(options.inBitmap,
+            RegionDecodeOptions.getSampledSize(rect.width(), sample),
+            RegionDecodeOptions.getSampledSize(rect.height(), sample),
+            options.inPreferredConfig != null
+                ? options.inPreferredConfig : options.inBitmap.getConfig());
+      }
+    }
+
+    try {
+      return decoder.decodeRegion(rect, bitmapOptions);
+    } catch (IllegalArgumentException e) {
+      if (bitmapOptions.inBitmap != null) {
+        // The inBitmap can't be reused, the caller still owns it
+        bitmapOptions.inBitmap = null;
+        return decoder.decodeRegion(rect, bitmapOptions);
       }
+      throw e;
+    }
+  }
+
+  // BitmapRegionDecoder keeps the size of inBitmap, returns the bitmap
+  // if it's the size of the decoded region or could be reconfigured to be
+  @Nullable
+  private static Bitmap fitBitmap(@Nullable Bitmap bitmap, int width, int height,
+      Bitmap.Config config) {
+    if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()) {
+      return null;
+    }
+    if (bitmap.getWidth() == width && bitmap.getHeight() == height &&
+        bitmap.getConfig() == config) {
+      return bitmap;
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && bitmap.getAllocationByteCount() >=
+        width * height * BitmapUtil.getPixelSizeForBitmapConfig(config)) {
+      bitmap.reconfigure(width, height, config);
+      return bitmap;
     }
     return null;
   }
+
+  // Takes an idle decoder, creates a new one if it's allowed, or waits for one
+  @Nullable
+  private PooledDecoder obtainDecoder() {
+    Source source;
+    synchronized (this) {
+      while (true) {
+        if (closed) {
+          return null;
+        }
+        if (!idleDecoders.isEmpty()) {
+          return idleDecoders.pop();
+        }
+        if (decoderCount < maxDecoderCount) {
+          // Take the place, create the decoder out of the lock
+          ++decoderCount;
+          source = this.source;
+          break;
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+    }
+
+    BitmapRegionDecoder decoder = source.newDecoder();
+
+    if (decoder == null) {
+      synchronized (this) {
+        // Can't create more decoders, don't try again
+        --decoderCount;
+        maxDecoderCount = decoderCount;
+        if (decoderCount == 0) {
+          return null;
+        }
+      }
+      return obtainDecoder();
+    }
+
+    return new PooledDecoder(decoder);
+  }
+
+  private void releaseDecoder(PooledDecoder decoder) {
+    synchronized (this) {
+      if (!closed) {
+        idleDecoders.push(decoder);
+        notify();
+        return;
+      }
+      --decoderCount;
+    }
+    decoder.recycle();
+  }
+
+  /**
+   * Recycles idle decoders, keeps at least one decoder.
+   * The stripe bitmap of the kept decoder is recycled too.
+   */
+  @Override
+  public void trim(MemoryTrimType trimType) {
+    List<PooledDecoder> trimmed = null;
+    Bitmap stripe = null;
+    synchronized (this) {
+      while (decoderCount > 1 && !idleDecoders.isEmpty()) {
+        if (trimmed == null) {
+          trimmed = new ArrayList<>();
+        }
+        // The last one is the least recently used
+        trimmed.add(idleDecoders.removeLast());
+        --decoderCount;
+      }
+      PooledDecoder kept = idleDecoders.peek();
+      if (kept != null) {
+        stripe = kept.stripe;
+        kept.stripe = null;
+      }
+    }
+    if (trimmed != null) {
+      for (PooledDecoder decoder : trimmed) {
+        decoder.recycle();
+      }
+    }
+    if (stripe != null) {
+      stripe.recycle();
+    }
+  }
+
+  @Override
+  public void close() {
+    List<PooledDecoder> decoders;
+    Source source;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      decoders = new ArrayList<>(idleDecoders);
+      decoderCount -= idleDecoders.size();
+      idleDecoders.clear();
+      source = this.source;
+      this.source = null;
+      notifyAll();
+    }
+
+    if (registry != null) {
+      registry.unregisterMemoryTrimmable(this);
+    }
+    // Decoders in use are recycled in releaseDecoder()
+    for (PooledDecoder decoder : decoders) {
+      decoder.recycle();
+    }
+    if (source != null) {
+      source.close();
+    }
+  }
+
+  @Nullable
+  private static BitmapRegionDecoder newDecoder(InputStream is) {
+    try {
+      if (is instanceof FileInputStream) {
+        // Read the file directly, don't copy it
+        return newDecoder(((FileInputStream) is).getFD());
+      }
+      return BitmapRegionDecoder.newInstance(is, false);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Nullable
+  private static BitmapRegionDecoder newDecoder(FileDescriptor fd) {
+    try {
+      // Shareable, old platforms dup the descriptor instead of using it,
+      // so the descriptor could be closed after the decoder is created
+      return BitmapRegionDecoder.newInstance(fd, true);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Nullable
+  private static BitmapRegionDecoder newDecoder(String path) {
+    FileInputStream is;
+    try {
+      is = new FileInputStream(path);
+    } catch (IOException e) {
+      return null;
+    }
+    try {
+      return newDecoder(is);
+    } finally {
+      closeQuietly(is);
+    }
+  }
+
+  private static void closeQuietly(InputStream is) {
+    try {
+      is.close();
+    } catch (IOException e) {
+      // Ignore
+    }
+  }
+
+  // ParcelFileDescriptor isn't Closeable before Jelly Bean
+  private static void closeQuietly(ParcelFileDescriptor pfd) {
+    try {
+      pfd.close();
+    } catch (IOException e) {
+      // Ignore
+    }
+  }
+
+  @Nullable
+  public static SkipImageRegionDecoder create(EncodedImage encodedImage) {
+    return create(encodedImage, 1, null);
+  }
+
+  /**
+   * Creates a {@code SkipImageRegionDecoder} in multi-instance mode.
+   * It falls back to single-instance mode if {@code maxDecoderCount} is {@code 1},
+   * or the encoded image isn't backed by a {@link PooledByteBuffer}.
+   *
+   * @param maxDecoderCount the max count of {@code BitmapRegionDecoder}s
+   * @param registry the registry to receive memory trim events, could be {@code null}
+   */
+  @Nullable
+  public static SkipImageRegionDecoder create(EncodedImage encodedImage, int maxDecoderCount,
+      @Nullable MemoryTrimmableRegistry registry) {
+    CloseableReference<PooledByteBuffer> reference = encodedImage.getByteBufferRef();
+    if (reference == null || maxDecoderCount <= 1) {
+      CloseableReference.closeSafely(reference);
+      InputStream is = encodedImage.getInputStream();
+      if (is == null) {
+        return null;
+      }
+      BitmapRegionDecoder decoder;
+      try {
+        decoder = newDecoder(is);
+      } finally {
+        closeQuietly(is);
+      }
+      if (decoder == null) {
+        return null;
+      }
+      // A file isn't copied
+      int encodedSize = is instanceof FileInputStream ? 0 : encodedImage.getSize();
+      return new SkipImageRegionDecoder(decoder, null, encodedSize, maxDecoderCount, registry);
+    }
+
+    BitmapRegionDecoder decoder = newDecoder(new PooledByteBufferInputStream(reference.get()));
+    if (decoder == null) {
+      reference.close();
+      return null;
+    }
+    return new SkipImageRegionDecoder(decoder, new BufferSource(reference),
+        reference.get().size(), maxDecoderCount, registry);
+  }
+
+  /**
+   * Creates a {@code SkipImageRegionDecoder} in single-instance mode from a local file.
+   * The file is read through its file descriptor, it's not copied to memory.
+   */
+  @Nullable
+  public static SkipImageRegionDecoder create(String path) {
+    return create(path, 1, null);
+  }
+
+  /**
+   * Creates a {@code SkipImageRegionDecoder} in multi-instance mode from a local file.
+   * Each {@code BitmapRegionDecoder} opens the file, the file is never copied to memory.
+   *
+   * @param maxDecoderCount the max count of {@code BitmapRegionDecoder}s
+   * @param registry the registry to receive memory trim events, could be {@code null}
+   */
+  @Nullable
+  public static SkipImageRegionDecoder create(String path, int maxDecoderCount,
+      @Nullable MemoryTrimmableRegistry registry) {
+    BitmapRegionDecoder decoder = newDecoder(path);
+    if (decoder == null) {
+      return null;
+    }
+    return new SkipImageRegionDecoder(decoder,
+        maxDecoderCount > 1 ? new FileSource(path) : null, 0, maxDecoderCount, registry);
+  }
+
+  /**
+   * Creates a {@code SkipImageRegionDecoder} in single-instance mode from a file descriptor,
+   * like the one of a content uri. The file is read through the descriptor,
+   * it's not copied to memory. It takes the ownership of the descriptor,
+   * it's closed before this method returns.
+   * <p>
+   * It can't be in multi-instance mode. Before Pie, each {@code BitmapRegionDecoder}
+   * reads a dup of the descriptor, all dups share one file offset,
+   * concurrent decodes would read the bytes of each other.
+   *
+   * @param registry the registry to receive memory trim events, could be {@code null}
+   */
+  @Nullable
+  public static SkipImageRegionDecoder create(ParcelFileDescriptor pfd,
+      @Nullable MemoryTrimmableRegistry registry) {
+    BitmapRegionDecoder decoder;
+    try {
+      decoder = newDecoder(pfd.getFileDescriptor());
+    } finally {
+      closeQuietly(pfd);
+    }
+    return decoder != null ? new SkipImageRegionDecoder(decoder, null, 0, 1, registry) : null;
+  }
+
+  // A BitmapRegionDecoder and the state to decode in stripes,
+  // it's used by one thread at a time
+  private static final class PooledDecoder {
+
+    final BitmapRegionDecoder decoder;
+    final Canvas canvas = new Canvas();
+    final Rect stripeRect = new Rect();
+    final RegionDecodeOptions stripeOptions = new RegionDecodeOptions();
+    @Nullable
+    Bitmap stripe;
+
+    PooledDecoder(BitmapRegionDecoder decoder) {
+      this.decoder = decoder;
+    }
+
+    void recycle() {
+      decoder.recycle();
+      if (stripe != null) {
+        stripe.recycle();
+        stripe = null;
+      }
+    }
+  }
+
+  // Creates more BitmapRegionDecoders in multi-instance mode, it's thread-safe
+  private interface Source {
+    @Nullable
+    BitmapRegionDecoder newDecoder();
+
+    void close();
+  }
+
+  private static final class BufferSource implements Source {
+
+    @Nullable
+    private CloseableReference<PooledByteBuffer> reference;
+
+    BufferSource(CloseableReference<PooledByteBuffer> reference) {
+      this.reference = reference;
+    }
+
+    @Nullable
+    @Override
+    public BitmapRegionDecoder newDecoder() {
+      CloseableReference<PooledByteBuffer> reference;
+      synchronized (this) {
+        reference = CloseableReference.cloneOrNull(this.reference);
+      }
+      if (reference == null) {
+        // Closed
+        return null;
+      }
+      try {
+        return SkipImageRegionDecoder.newDecoder(
+            new PooledByteBufferInputStream(reference.get()));
+      } finally {
+        reference.close();
+      }
+    }
+
+    @Override
+    public void close() {
+      CloseableReference<PooledByteBuffer> reference;
+      synchronized (this) {
+        reference = this.reference;
+        this.reference = null;
+      }
+      CloseableReference.closeSafely(reference);
+    }
+  }
+
+  private static final class FileSource implements Source {
+
+    private final String path;
+
+    FileSource(String path) {
+      this.path = path;
+    }
+
+    @Nullable
+    @Override
+    public BitmapRegionDecoder newDecoder() {
+      return SkipImageRegionDecoder.newDecoder(path);
+    }
+
+    @Override
+    public void close() {}
+  }
 }
@@ -38,15 +38,20 @@ import com.hippo.fresco.large.decoder.skia.SkiaImageRegionDecoderFactory;
 
 public class DemoApp extends Application {
 
+  private final DemoMemoryTrimmableRegistry memoryTrimmableRegistry =
+      new DemoMemoryTrimmableRegistry();
+
   @Override
   public void onCreate() {
     super.onCreate();
 
     FrescoLargeConfig.Builder builder = FrescoLargeConfig.newBuilder();
+    builder.setMemoryTrimmableRegistry(memoryTrimmableRegistry);
     builder.setThresholdSize(256, 256);
     ImageRegionDecoderFactory decoderFactory = new SkiaImageRegionDecoderFactory();
     builder.addDecoder(DefaultImageFormats.JPEG, decoderFactory);
     builder.addDecoder(DefaultImageFormats.PNG, decoderFactory);
+    builder.setOpaque(DefaultImageFormats.JPEG, true);
 
     ImageDecoderConfig.Builder decoderConfigBuilder = ImageDecoderConfig.newBuilder();
     DraweeConfig.Builder draweeConfigBuilder = DraweeConfig.newBuilder();
@@ -55,8 +60,15 @@ public class DemoApp extends Application {
     ImagePipelineConfig imagePipelineConfig = ImagePipelineConfig
         .newBuilder(this)
         .setImageDecoderConfig(decoderConfigBuilder.build())
+        .setMemoryTrimmableRegistry(memoryTrimmableRegistry)
         .build();
 
     Fresco.initialize(this, imagePipelineConfig, draweeConfigBuilder.build());
   }
+
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    memoryTrimmableRegistry.onTrimMemory(level);
+  }
 }
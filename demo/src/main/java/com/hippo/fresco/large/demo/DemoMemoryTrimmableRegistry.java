@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.demo;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.content.ComponentCallbacks2;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmable;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dispatches {@code onTrimMemory(int)} to all registered {@link MemoryTrimmable}s.
+ */
+public class DemoMemoryTrimmableRegistry implements MemoryTrimmableRegistry {
+
+  private final List<MemoryTrimmable> trimmables = new ArrayList<>();
+
+  @Override
+  public synchronized void registerMemoryTrimmable(MemoryTrimmable trimmable) {
+    trimmables.add(trimmable);
+  }
+
+  @Override
+  public synchronized void unregisterMemoryTrimmable(MemoryTrimmable trimmable) {
+    trimmables.remove(trimmable);
+  }
+
+  public synchronized void onTrimMemory(int level) {
+    MemoryTrimType trimType;
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+      trimType = MemoryTrimType.OnSystemLowMemoryWhileAppInBackground;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      trimType = MemoryTrimType.OnAppBackgrounded;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      trimType = MemoryTrimType.OnSystemLowMemoryWhileAppInForeground;
+    } else {
+      return;
+    }
+    for (MemoryTrimmable trimmable : trimmables) {
+      trimmable.trim(trimType);
+    }
+  }
+}
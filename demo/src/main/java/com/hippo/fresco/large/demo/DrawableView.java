@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.demo;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * A view draws a drawable in its whole area. Unlike ImageView,
+ * the bounds of the drawable is always the size of the view.
+ */
+public class DrawableView extends View {
+
+  private Drawable drawable;
+
+  public DrawableView(Context context) {
+    super(context);
+  }
+
+  public DrawableView(Context context, AttributeSet attrs) {
+    super(context, attrs);
+  }
+
+  public void setDrawable(Drawable drawable) {
+    if (this.drawable != null) {
+      this.drawable.setCallback(null);
+    }
+    this.drawable = drawable;
+    if (drawable != null) {
+      drawable.setCallback(this);
+      drawable.setBounds(0, 0, getWidth(), getHeight());
+    }
+    invalidate();
+  }
+
+  public Drawable getDrawable() {
+    return drawable;
+  }
+
+  @Override
+  protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
+    if (drawable != null) {
+      drawable.setBounds(0, 0, w, h);
+    }
+  }
+
+  @Override
+  protected boolean verifyDrawable(Drawable who) {
+    return who == drawable || super.verifyDrawable(who);
+  }
+
+  @Override
+  protected void onDraw(Canvas canvas) {
+    if (drawable != null) {
+      drawable.draw(canvas);
+    }
+  }
+}
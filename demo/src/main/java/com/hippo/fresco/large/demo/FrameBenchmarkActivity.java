@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.demo;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.annotation.TargetApi;
+import android.graphics.Matrix;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Choreographer;
+import android.widget.TextView;
+import com.facebook.common.executors.UiThreadImmediateExecutorService;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.datasource.BaseDataSubscriber;
+import com.facebook.datasource.DataSource;
+import com.facebook.drawee.backends.pipeline.Fresco;
+import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.request.ImageRequest;
+import com.hippo.fresco.large.ClosableLargeImage;
+import com.hippo.fresco.large.ImageRegionDecoder;
+import com.hippo.fresco.large.SubsamplingDrawable;
+import com.hippo.fresco.large.TileDecodeTask;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures frame time while a scripted zoom and pan runs over a large image.
+ * It zooms from fitting the view to 1:1, then pans across the image.
+ * The result, with the time spent on tile decoding, is shown on the screen and logged.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class FrameBenchmarkActivity extends AppCompatActivity implements Choreographer.FrameCallback {
+
+  private static final String LOG_TAG = FrameBenchmarkActivity.class.getSimpleName();
+
+  private static final long ZOOM_DURATION = 3000;
+  private static final long PAN_DURATION = 5000;
+  private static final long FRAME_BUDGET_NANOS = 16_666_667;
+
+  private DrawableView drawableView;
+  private TextView resultView;
+  private DataSource<CloseableReference<CloseableImage>> dataSource;
+  private SubsamplingDrawable drawable;
+
+  private final Matrix matrix = new Matrix();
+  private long startTimeNanos;
+  private long lastFrameTimeNanos;
+  private long[] frameTimes = new long[1024];
+  private int frameCount;
+
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setContentView(R.layout.activity_frame_benchmark);
+    drawableView = (DrawableView) findViewById(R.id.drawable_view);
+    resultView = (TextView) findViewById(R.id.result);
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+      resultView.setText("Choreographer requires Jelly Bean");
+      return;
+    }
+
+    dataSource = Fresco.getImagePipeline().fetchDecodedImage(
+        ImageRequest.fromUri("res:///" + R.drawable.test), null);
+    dataSource.subscribe(new BaseDataSubscriber<CloseableReference<CloseableImage>>() {
+      @Override
+      protected void onNewResultImpl(DataSource<CloseableReference<CloseableImage>> dataSource) {
+        if (dataSource.isFinished()) {
+          onImageLoaded(dataSource.getResult());
+        }
+      }
+
+      @Override
+      protected void onFailureImpl(DataSource<CloseableReference<CloseableImage>> dataSource) {
+        resultView.setText("Can't load the image");
+      }
+    }, UiThreadImmediateExecutorService.getInstance());
+  }
+
+  private void onImageLoaded(CloseableReference<CloseableImage> reference) {
+    try {
+      CloseableImage image = reference != null ? reference.get() : null;
+      if (!(image instanceof ClosableLargeImage)) {
+        resultView.setText("The image isn't large");
+        return;
+      }
+      CloseableReference<ImageRegionDecoder> decoder = ((ClosableLargeImage) image).getDecoder();
+      if (decoder == null) {
+        return;
+      }
+      drawable = new SubsamplingDrawable(decoder);
+      drawableView.setDrawable(drawable);
+    } finally {
+      CloseableReference.closeSafely(reference);
+    }
+
+    resultView.setText("Running...");
+    TileDecodeTask.resetDecodeTime();
+    Choreographer.getInstance().postFrameCallback(this);
+  }
+
+  @Override
+  public void doFrame(long frameTimeNanos) {
+    if (drawable == null) {
+      return;
+    }
+
+    if (startTimeNanos == 0) {
+      startTimeNanos = frameTimeNanos;
+    } else {
+      if (frameCount == frameTimes.length) {
+        frameTimes = Arrays.copyOf(frameTimes, frameCount * 2);
+      }
+      frameTimes[frameCount++] = frameTimeNanos - lastFrameTimeNanos;
+    }
+    lastFrameTimeNanos = frameTimeNanos;
+
+    long elapsed = (frameTimeNanos - startTimeNanos) / 1_000_000;
+    if (elapsed >= ZOOM_DURATION + PAN_DURATION) {
+      showResult();
+      return;
+    }
+
+    updateMatrix(elapsed);
+    drawable.setMatrix(matrix);
+    Choreographer.getInstance().postFrameCallback(this);
+  }
+
+  private void updateMatrix(long elapsed) {
+    float viewWidth = drawableView.getWidth();
+    float viewHeight = drawableView.getHeight();
+    float imageWidth = drawable.getIntrinsicWidth();
+    float imageHeight = drawable.getIntrinsicHeight();
+    float fitScale = Math.min(viewWidth / imageWidth, viewHeight / imageHeight);
+
+    float scale;
+    // The image point at the center of the view
+    float centerX;
+    float centerY;
+    if (elapsed < ZOOM_DURATION) {
+      float progress = (float) elapsed / ZOOM_DURATION;
+      scale = fitScale + (1.0f - fitScale) * progress;
+      centerX = imageWidth / 2;
+      centerY = imageHeight / 2;
+    } else {
+      float progress = (float) (elapsed - ZOOM_DURATION) / PAN_DURATION;
+      scale = 1.0f;
+      centerX = imageWidth / 2 + (progress - 0.5f) * (imageWidth - viewWidth);
+      centerY = imageHeight / 2 +
+          (float) Math.sin(progress * 2 * Math.PI) * (imageHeight - viewHeight) / 2;
+    }
+
+    matrix.setScale(scale, scale);
+    matrix.postTranslate(viewWidth / 2 - centerX * scale, viewHeight / 2 - centerY * scale);
+  }
+
+  private void showResult() {
+    if (frameCount == 0) {
+      return;
+    }
+    long[] times = Arrays.copyOf(frameTimes, frameCount);
+    Arrays.sort(times);
+    long total = 0;
+    int janky = 0;
+    for (long time : times) {
+      total += time;
+      // Allow a little jitter of vsync
+      if (time > FRAME_BUDGET_NANOS * 3 / 2) {
+        ++janky;
+      }
+    }
+
+    String result = String.format(Locale.US,
+        "frames: %d\navg: %.2fms\np50: %.2fms\np90: %.2fms\np99: %.2fms\nmax: %.2fms\n" +
+            "janky: %d (%.1f%%)\ndecode: %dms\nwasted decode: %dms",
+        frameCount, total / 1e6 / frameCount,
+        times[frameCount / 2] / 1e6, times[frameCount * 9 / 10] / 1e6,
+        times[frameCount * 99 / 100] / 1e6, times[frameCount - 1] / 1e6,
+        janky, 100.0f * janky / frameCount,
+        TileDecodeTask.getDecodeTime(), TileDecodeTask.getWastedDecodeTime());
+    resultView.setText(result);
+    Log.i(LOG_TAG, result);
+  }
+
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+      Choreographer.getInstance().removeFrameCallback(this);
+    }
+    if (dataSource != null) {
+      dataSource.close();
+    }
+    if (drawable != null) {
+      drawableView.setDrawable(null);
+      drawable.close();
+      drawable = null;
+    }
+  }
+}
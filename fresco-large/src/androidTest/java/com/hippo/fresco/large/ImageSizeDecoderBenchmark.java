@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Bitmap;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.util.Pair;
+import com.facebook.common.memory.PooledByteBuffer;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.imageformat.DefaultImageFormats;
+import com.facebook.imageformat.ImageFormat;
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.hippo.fresco.large.size.HeaderImageSizeDecoder;
+import java.io.ByteArrayOutputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the routing cost of {@link HeaderImageSizeDecoder} and
+ * {@link DefaultImageSizeDecoder} on a feed of small thumbnails.
+ * Results are logged with tag {@code ImageSizeDecoderBenchmark}, they aren't
+ * asserted since timing depends on the device. Only the sizes are checked.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageSizeDecoderBenchmark {
+
+  private static final String LOG_TAG = ImageSizeDecoderBenchmark.class.getSimpleName();
+
+  private static final int THUMBNAIL_WIDTH = 160;
+  private static final int THUMBNAIL_HEIGHT = 120;
+  private static final int WARM_UP_COUNT = 500;
+  private static final int COUNT = 5000;
+
+  @Test
+  public void jpeg() {
+    benchmark(DefaultImageFormats.JPEG, Bitmap.CompressFormat.JPEG);
+  }
+
+  @Test
+  public void png() {
+    benchmark(DefaultImageFormats.PNG, Bitmap.CompressFormat.PNG);
+  }
+
+  @Test
+  public void webp() {
+    // Lossy WebP
+    benchmark(DefaultImageFormats.WEBP_SIMPLE, Bitmap.CompressFormat.WEBP);
+  }
+
+  private static void benchmark(ImageFormat format, Bitmap.CompressFormat compressFormat) {
+    Bitmap bitmap = Bitmap.createBitmap(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT,
+        Bitmap.Config.ARGB_8888);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    bitmap.compress(compressFormat, 90, os);
+    bitmap.recycle();
+
+    CloseableReference<PooledByteBuffer> reference =
+        CloseableReference.<PooledByteBuffer>of(new ByteArrayPooledByteBuffer(os.toByteArray()));
+    try {
+      ImageSizeDecoder headerDecoder = HeaderImageSizeDecoder.forImageFormat(format);
+      ImageSizeDecoder defaultDecoder = new DefaultImageSizeDecoder();
+
+      // Both get the same size
+      Pair<Integer, Integer> headerSize = decode(headerDecoder, reference, format);
+      Pair<Integer, Integer> defaultSize = decode(defaultDecoder, reference, format);
+      assertEquals(THUMBNAIL_WIDTH, (int) headerSize.first);
+      assertEquals(THUMBNAIL_HEIGHT, (int) headerSize.second);
+      assertEquals(defaultSize, headerSize);
+
+      run(headerDecoder, reference, format, WARM_UP_COUNT);
+      run(defaultDecoder, reference, format, WARM_UP_COUNT);
+      long headerNanos = run(headerDecoder, reference, format, COUNT);
+      long defaultNanos = run(defaultDecoder, reference, format, COUNT);
+
+      Log.i(LOG_TAG, format.getName() + ": header " + headerNanos / 1000.0f + "us/op, " +
+          "parseMetaData " + defaultNanos / 1000.0f + "us/op");
+    } finally {
+      reference.close();
+    }
+  }
+
+  private static Pair<Integer, Integer> decode(ImageSizeDecoder decoder,
+      CloseableReference<PooledByteBuffer> reference, ImageFormat format) {
+    // A new EncodedImage every time, parsed meta data is kept in it
+    EncodedImage image = new EncodedImage(reference);
+    try {
+      image.setImageFormat(format);
+      return decoder.decode(image, image.getSize());
+    } finally {
+      image.close();
+    }
+  }
+
+  // Returns nanoseconds per image
+  private static long run(ImageSizeDecoder decoder,
+      CloseableReference<PooledByteBuffer> reference, ImageFormat format, int count) {
+    long start = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      decode(decoder, reference, format);
+    }
+    return (System.nanoTime() - start) / count;
+  }
+
+  private static class ByteArrayPooledByteBuffer implements PooledByteBuffer {
+
+    private final byte[] data;
+    private boolean closed;
+
+    ByteArrayPooledByteBuffer(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public int size() {
+      return data.length;
+    }
+
+    @Override
+    public byte read(int offset) {
+      return data[offset];
+    }
+
+    @Override
+    public void read(int offset, byte[] buffer, int bufferOffset, int length) {
+      System.arraycopy(data, offset, buffer, bufferOffset, length);
+    }
+
+    @Override
+    public long getNativePtr() {
+      // Not in native memory
+      return 0;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return closed;
+    }
+  }
+}
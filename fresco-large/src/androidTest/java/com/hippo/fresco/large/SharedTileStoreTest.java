@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import com.facebook.common.references.CloseableReference;
+import com.hippo.fresco.large.TileTestHelper.CountingDecoder;
+import com.hippo.fresco.large.TileTestHelper.SynchronousScheduler;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that {@link SubsamplingDrawable}s sharing a {@link SharedTileStore}
+ * decode each tile once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SharedTileStoreTest {
+
+  private static final int IMAGE_SIZE = 4096;
+  private static final int WINDOW_SIZE = 1024;
+
+  @Test
+  public void draw_twoDrawables_decodeOnce() throws Exception {
+    Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    final Canvas canvas = new Canvas(
+        Bitmap.createBitmap(WINDOW_SIZE, WINDOW_SIZE, Bitmap.Config.RGB_565));
+    final CountingDecoder decoder = new CountingDecoder(IMAGE_SIZE);
+    final CloseableReference<ImageRegionDecoder> reference =
+        CloseableReference.<ImageRegionDecoder>of(decoder);
+    final SharedTileStore store = new SharedTileStore();
+    final SubsamplingDrawable[] drawables = new SubsamplingDrawable[2];
+
+    instrumentation.runOnMainSync(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < drawables.length; i++) {
+          drawables[i] = new SubsamplingDrawable(reference.clone(),
+              new SynchronousScheduler(), new TileBitmapPool(),
+              new TileCache(64 * 1024 * 1024), true);
+          drawables[i].setTileStore(store);
+          drawables[i].setBounds(0, 0, WINDOW_SIZE, WINDOW_SIZE);
+        }
+        reference.close();
+      }
+    });
+
+    assertTrue(TileTestHelper.drawUntilLoaded(instrumentation, drawables[0], canvas));
+    int decodeCount = decoder.count.get();
+    int tileCount = store.getCount();
+    int tileSize = store.getSizeInBytes();
+    assertTrue(decodeCount > 0);
+    assertTrue(tileSize > 0);
+
+    assertTrue(TileTestHelper.drawUntilLoaded(instrumentation, drawables[1], canvas));
+    assertEquals(decodeCount, decoder.count.get());
+    assertEquals(tileCount, store.getCount());
+    assertEquals(tileSize, store.getSizeInBytes());
+
+    instrumentation.runOnMainSync(new Runnable() {
+      @Override
+      public void run() {
+        drawables[0].close();
+        drawables[1].close();
+      }
+    });
+    assertEquals(0, store.getCount());
+    assertEquals(0, store.getSizeInBytes());
+  }
+}
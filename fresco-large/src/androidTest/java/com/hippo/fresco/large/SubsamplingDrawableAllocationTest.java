@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import com.facebook.common.references.CloseableReference;
+import com.hippo.fresco.large.TileTestHelper.CountingDecoder;
+import com.hippo.fresco.large.TileTestHelper.SynchronousScheduler;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that {@link SubsamplingDrawable#draw(Canvas)} allocates nothing
+ * once all visible tiles are loaded.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SubsamplingDrawableAllocationTest {
+
+  private static final int IMAGE_SIZE = 8192;
+  private static final int WINDOW_SIZE = 1024;
+  // One second at 60fps
+  private static final int FRAMES = 60;
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void draw_steadyState_allocatesNothing() throws Exception {
+    Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    final Bitmap target = Bitmap.createBitmap(WINDOW_SIZE, WINDOW_SIZE, Bitmap.Config.RGB_565);
+    final Canvas canvas = new Canvas(target);
+    final SubsamplingDrawable[] drawable = new SubsamplingDrawable[1];
+    final int[] allocCount = new int[1];
+
+    instrumentation.runOnMainSync(new Runnable() {
+      @Override
+      public void run() {
+        drawable[0] = new SubsamplingDrawable(
+            CloseableReference.<ImageRegionDecoder>of(new CountingDecoder(IMAGE_SIZE)),
+            new SynchronousScheduler(), new TileBitmapPool(), new TileCache(64 * 1024 * 1024),
+            true);
+        drawable[0].setBounds(0, 0, WINDOW_SIZE, WINDOW_SIZE);
+      }
+    });
+
+    assertTrue(TileTestHelper.drawUntilLoaded(instrumentation, drawable[0], canvas));
+
+    instrumentation.runOnMainSync(new Runnable() {
+      @Override
+      public void run() {
+        // Warm up
+        drawable[0].draw(canvas);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAMES; i++) {
+          drawable[0].draw(canvas);
+        }
+        Debug.stopAllocCounting();
+        allocCount[0] = Debug.getThreadAllocCount();
+
+        drawable[0].close();
+      }
+    });
+
+    assertEquals(0, allocCount[0]);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.app.Instrumentation;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Fakes and helpers for {@link SubsamplingDrawable} tests.
+ */
+final class TileTestHelper {
+  private TileTestHelper() {}
+
+  // More draws mean tiles keep loading forever
+  private static final int MAX_DRAW_COUNT = 100;
+
+  /**
+   * Draws the drawable until no more tile is loaded. Tiles decoded in a draw
+   * are delivered right after it, not in next frame. Returns {@code false}
+   * if tiles are still loaded after {@link #MAX_DRAW_COUNT} draws.
+   * The drawable must use a {@link SynchronousScheduler}.
+   */
+  static boolean drawUntilLoaded(Instrumentation instrumentation,
+      final SubsamplingDrawable drawable, final Canvas canvas) {
+    final boolean[] loaded = new boolean[1];
+    instrumentation.runOnMainSync(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < MAX_DRAW_COUNT; i++) {
+          drawable.draw(canvas);
+          if (!TileDeliveryBatcher.flush()) {
+            loaded[0] = true;
+            return;
+          }
+        }
+      }
+    });
+    return loaded[0];
+  }
+
+  /**
+   * Decodes tiles on the calling thread.
+   */
+  static class SynchronousScheduler implements TileDecodeScheduler {
+    @Override
+    public void schedule(TileDecodeTask task) {
+      task.run();
+    }
+
+    @Override
+    public boolean raisePriority(TileDecodeTask task, int priority) {
+      // Tasks are done when they are scheduled
+      return false;
+    }
+  }
+
+  /**
+   * Creates blank RGB_565 tiles and counts decodes.
+   */
+  static class CountingDecoder implements ExtendedImageRegionDecoder {
+
+    final AtomicInteger count = new AtomicInteger();
+    private final int size;
+
+    CountingDecoder(int size) {
+      this.size = size;
+    }
+
+    @Override
+    public int getWidth() {
+      return size;
+    }
+
+    @Override
+    public int getHeight() {
+      return size;
+    }
+
+    @Nullable
+    @Override
+    public Bitmap decode(Rect rect) {
+      return decode(rect, null);
+    }
+
+    @Nullable
+    @Override
+    public Bitmap decode(Rect rect, @Nullable RegionDecodeOptions options) {
+      count.incrementAndGet();
+      int sample = options != null ? options.inSampleSize : 1;
+      return Bitmap.createBitmap(RegionDecodeOptions.getSampledSize(rect.width(), sample),
+          RegionDecodeOptions.getSampledSize(rect.height(), sample), Bitmap.Config.RGB_565);
+    }
+
+    @Override
+    public int getSizeInBytes() {
+      return 0;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
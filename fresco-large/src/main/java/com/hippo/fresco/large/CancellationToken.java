@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+/**
+ * Tells whether a decode is still wanted. It's checked by decoders
+ * between steps of a decode, a cancelled decode is given up.
+ *
+ * @see RegionDecodeOptions#cancellationToken
+ */
+public interface CancellationToken {
+
+  /**
+   * Returns {@code true} if the decode is cancelled. Could be called on any thread.
+   */
+  boolean isCancelled();
+}
@@ -24,18 +24,67 @@ import com.facebook.common.references.CloseableReference;
 import com.facebook.imagepipeline.image.CloseableImage;
 import javax.annotation.Nullable;
 
+/**
+ * A large image, it holds an {@link ImageRegionDecoder} instead of a bitmap.
+ * <p>
+ * {@link #getSizeInBytes()} is reported to the memory cache of the pipeline.
+ * The cache requires it to be stable while the image is cached,
+ * so it's estimated once: the footprint of the decoder, plus the tiles
+ * which are always kept to fill the window, see {@link #RESERVED_WINDOW_SIZE}.
+ * The bytes of tiles currently decoded are {@link #getTileSizeInBytes()}.
+ */
 public class ClosableLargeImage extends CloseableImage {
 
+  /**
+   * The window size to estimate the bytes of tiles in {@link #getSizeInBytes()}.
+   * Tiles filling the window are kept while the image is shown.
+   */
+  public static final int RESERVED_WINDOW_SIZE = 2048;
+
   private ImageRegionDecoder decoder;
   private CloseableReference<ImageRegionDecoder> decoderReference;
   private int width;
   private int height;
+  private final boolean opaque;
+  @Nullable
+  private final String imageKey;
+  private final SharedTileStore tileStore = new SharedTileStore();
+  private final int sizeInBytes;
 
   public ClosableLargeImage(ImageRegionDecoder decoder) {
+    this(decoder, false, null);
+  }
+
+  /**
+   * @param opaque {@code true} if the image has no alpha channel
+   * @param imageKey the key to identify the image in {@link DiskTileCache}, could be {@code null}
+   */
+  public ClosableLargeImage(ImageRegionDecoder decoder, boolean opaque,
+      @Nullable String imageKey) {
     this.decoder = decoder;
     this.decoderReference = CloseableReference.of(decoder);
     this.width = decoder.getWidth();
     this.height = decoder.getHeight();
+    this.opaque = opaque;
+    this.imageKey = imageKey;
+
+    long size = (long) ImageRegionDecoderCompat.getSizeInBytes(decoder) +
+        getReservedTileSize(width, height, opaque);
+    this.sizeInBytes = (int) Math.min(Integer.MAX_VALUE, size);
+  }
+
+  // Bytes of the tiles to fill a window of RESERVED_WINDOW_SIZE,
+  // they are decoded in the full sample of SubsamplingDrawable with the default bias
+  private static long getReservedTileSize(int width, int height, boolean opaque) {
+    if (width <= 0 || height <= 0) {
+      return 0;
+    }
+    int sample = SampleCalculator.calculateFitSample(width, height,
+        RESERVED_WINDOW_SIZE, RESERVED_WINDOW_SIZE, SampleCalculator.BIAS_QUALITY);
+    long pixels = (long) RegionDecodeOptions.getSampledSize(width, sample) *
+        RegionDecodeOptions.getSampledSize(height, sample);
+    // Opaque images are decoded in RGB_565
+    return pixels * (opaque ? 2 : 4);
   }
 
   @Nullable
@@ -43,9 +92,42 @@ public class ClosableLargeImage extends CloseableImage {
     return decoderReference.cloneOrNull();
   }
 
+  /**
+   * Returns {@code true} if the image has no alpha channel.
+   */
+  public boolean isOpaque() {
+    return opaque;
+  }
+
+  /**
+   * Returns the key to identify the image in {@link DiskTileCache}.
+   */
+  @Nullable
+  public String getImageKey() {
+    return imageKey;
+  }
+
+  /**
+   * Returns the store to share tiles between drawables of this image.
+   */
+  public SharedTileStore getTileStore() {
+    return tileStore;
+  }
+
+  /**
+   * Returns the estimated bytes of the image, it doesn't change.
+   */
   @Override
   public int getSizeInBytes() {
-    return 0;
+    return sizeInBytes;
+  }
+
+  /**
+   * Returns the bytes of tiles decoded for drawables of this image, it changes
+   * while tiles are decoded and recycled. These tiles are also limited by {@link TileCache}.
+   */
+  public int getTileSizeInBytes() {
+    return tileStore.getSizeInBytes();
   }
 
   @Override
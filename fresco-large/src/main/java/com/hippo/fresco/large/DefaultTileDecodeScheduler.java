@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.os.Process;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link TileDecodeScheduler} backed by a bounded thread pool
+ * with a priority queue.
+ */
+public class DefaultTileDecodeScheduler implements TileDecodeScheduler {
+
+  private static final int MAX_DEFAULT_THREAD_COUNT = 4;
+  private static final int KEEP_ALIVE_SECONDS = 10;
+
+  private static DefaultTileDecodeScheduler instance;
+
+  private final ThreadPoolExecutor executor;
+
+  public DefaultTileDecodeScheduler() {
+    this(getDefaultThreadCount());
+  }
+
+  public DefaultTileDecodeScheduler(int threadCount) {
+    if (threadCount <= 0) {
+      throw new IllegalArgumentException("threadCount must be positive: " + threadCount);
+    }
+    executor = new ThreadPoolExecutor(threadCount, threadCount,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<Runnable>(), new TileThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public void schedule(TileDecodeTask task) {
+    executor.execute(task);
+  }
+
+  @Override
+  public boolean raisePriority(TileDecodeTask task, int priority) {
+    if (task.getPriority() >= priority) {
+      return false;
+    }
+    // The priority decides the position in the queue, take it out to change it.
+    // It fails if a thread has taken the task.
+    if (!executor.remove(task)) {
+      return false;
+    }
+    task.setPriority(priority);
+    executor.execute(task);
+    return true;
+  }
+
+  /**
+   * Returns the shared instance.
+   */
+  public static synchronized DefaultTileDecodeScheduler getInstance() {
+    if (instance == null) {
+      instance = new DefaultTileDecodeScheduler();
+    }
+    return instance;
+  }
+
+  private static int getDefaultThreadCount() {
+    // Keep a core for main thread and render thread
+    int count = Runtime.getRuntime().availableProcessors() - 1;
+    return Math.max(1, Math.min(count, MAX_DEFAULT_THREAD_COUNT));
+  }
+
+  private static class TileThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      return new Thread(new Runnable() {
+        @Override
+        public void run() {
+          Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+          r.run();
+        }
+      }, "TileDecoder #" + count.getAndIncrement());
+    }
+  }
+}
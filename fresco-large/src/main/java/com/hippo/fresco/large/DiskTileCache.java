@@ -0,0 +1,436 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Build;
+import com.facebook.common.logging.FLog;
+import com.facebook.imagepipeline.image.EncodedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import javax.annotation.Nullable;
+
+/**
+ * A disk cache for tile pixels. Tiles are stored as raw pixels,
+ * and read through memory-mapped files, no decoding is needed.
+ * <p>
+ * Tiles are keyed by the image key, the sample and the rect.
+ * The least recently used tiles are deleted if the cache is over {@code maxSize}.
+ * Bump {@link #VERSION} if the file format changes, old files are deleted.
+ * <p>
+ * It's thread-safe, but it does disk IO, don't call it on main thread.
+ */
+public class DiskTileCache {
+
+  private static final Class<?> TAG = DiskTileCache.class;
+
+  private static final int VERSION = 1;
+  // "FLTC"
+  private static final int MAGIC = 0x464c5443;
+  private static final int HEADER_SIZE = 16;
+
+  private static final int CONFIG_ARGB_8888 = 0;
+  private static final int CONFIG_RGB_565 = 1;
+
+  private static final String VERSION_PREFIX = "v";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  // Bytes to read from each end of the encoded image to compute the image key
+  private static final int IMAGE_KEY_SAMPLE_SIZE = 16 * 1024;
+
+  private final File directory;
+  private final long maxSize;
+
+  private boolean initialized;
+  private long size;
+
+  /**
+   * @param directory the directory for the cache, it should be used by this cache only
+   * @param maxSize the max bytes of the cache
+   */
+  public DiskTileCache(File directory, long maxSize) {
+    this.directory = new File(directory, VERSION_PREFIX + VERSION);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Reads the tile. The {@code inBitmap} is reused if possible.
+   * If the returned bitmap isn't {@code inBitmap}, the caller is still the owner of it.
+   * Returns {@code null} if the tile isn't in the cache.
+   */
+  @Nullable
+  public Bitmap get(String imageKey, int sample, Rect rect, @Nullable Bitmap inBitmap) {
+    ensureInitialized();
+
+    File file = getFile(imageKey, sample, rect);
+    if (!file.exists()) {
+      return null;
+    }
+
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(file, "r");
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+        delete(file);
+        return null;
+      }
+      int width = buffer.getInt();
+      int height = buffer.getInt();
+      Bitmap.Config config = getConfig(buffer.getInt());
+      if (width <= 0 || height <= 0 || config == null) {
+        delete(file);
+        return null;
+      }
+
+      Bitmap bitmap = obtainBitmap(inBitmap, width, height, config);
+      if (buffer.remaining() < bitmap.getRowBytes() * height) {
+        if (bitmap != inBitmap) {
+          bitmap.recycle();
+        }
+        delete(file);
+        return null;
+      }
+      bitmap.copyPixelsFromBuffer(buffer);
+
+      // Mark it as recently used
+      file.setLastModified(System.currentTimeMillis());
+      return bitmap;
+    } catch (IOException | OutOfMemoryError e) {
+      FLog.w(TAG, e, "Can't read tile %s", file);
+      return null;
+    } finally {
+      closeQuietly(raf);
+    }
+  }
+
+  /**
+   * Writes the tile to the cache.
+   */
+  public void put(String imageKey, int sample, Rect rect, Bitmap bitmap) {
+    int configCode = getConfigCode(bitmap.getConfig());
+    if (configCode < 0) {
+      // Not supported
+      return;
+    }
+
+    ensureInitialized();
+
+    File file = getFile(imageKey, sample, rect);
+    File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId()
+        + TEMP_SUFFIX);
+    int length = HEADER_SIZE + bitmap.getRowBytes() * bitmap.getHeight();
+
+    RandomAccessFile raf = null;
+    boolean written = false;
+    try {
+      raf = new RandomAccessFile(temp, "rw");
+      raf.setLength(length);
+      MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+      buffer.putInt(MAGIC);
+      buffer.putInt(bitmap.getWidth());
+      buffer.putInt(bitmap.getHeight());
+      buffer.putInt(configCode);
+      bitmap.copyPixelsToBuffer(buffer);
+      written = true;
+    } catch (IOException | RuntimeException e) {
+      FLog.w(TAG, e, "Can't write tile %s", file);
+    } finally {
+      closeQuietly(raf);
+    }
+
+    if (!written) {
+      delete(temp);
+      return;
+    }
+
+    boolean overSize;
+    synchronized (this) {
+      // Another thread might have written the same tile, it's replaced
+      long oldLength = file.length();
+      if (!temp.renameTo(file)) {
+        delete(temp);
+        return;
+      }
+      size += length - oldLength;
+      overSize = size > maxSize;
+    }
+    if (overSize) {
+      evict();
+    }
+  }
+
+  /**
+   * Deletes all tiles.
+   */
+  public synchronized void clear() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        delete(file);
+      }
+    }
+    size = 0;
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  private File getFile(String imageKey, int sample, Rect rect) {
+    return new File(directory, imageKey + "_" + sample + "_" + rect.left + "_" + rect.top + "_"
+        + rect.right + "_" + rect.bottom);
+  }
+
+  private synchronized void ensureInitialized() {
+    if (initialized) {
+      return;
+    }
+    initialized = true;
+
+    // Delete files of other versions
+    File parent = directory.getParentFile();
+    File[] versions = parent != null ? parent.listFiles() : null;
+    if (versions != null) {
+      for (File version : versions) {
+        if (version.isDirectory() && version.getName().startsWith(VERSION_PREFIX) &&
+            !version.equals(directory)) {
+          deleteRecursively(version);
+        }
+      }
+    }
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      FLog.w(TAG, "Can't create directory %s", directory);
+    }
+
+    size = 0;
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().endsWith(TEMP_SUFFIX)) {
+          // Left by a crash
+          delete(file);
+        } else {
+          size += file.length();
+        }
+      }
+    }
+  }
+
+  // Deletes the least recently used files until the size is 90% of max size
+  private synchronized void evict() {
+    if (size <= maxSize) {
+      return;
+    }
+
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    final long[] lastModified = new long[files.length];
+    Integer[] indexes = new Integer[files.length];
+    for (int i = 0; i < files.length; i++) {
+      lastModified[i] = files[i].lastModified();
+      indexes[i] = i;
+    }
+    Arrays.sort(indexes, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        long la = lastModified[a];
+        long lb = lastModified[b];
+        return la < lb ? -1 : (la == lb ? 0 : 1);
+      }
+    });
+
+    long targetSize = maxSize / 10 * 9;
+    for (Integer index : indexes) {
+      if (size <= targetSize) {
+        break;
+      }
+      File file = files[index];
+      if (file.getName().endsWith(TEMP_SUFFIX)) {
+        continue;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        size -= length;
+      }
+    }
+  }
+
+  private static Bitmap obtainBitmap(@Nullable Bitmap inBitmap, int width, int height,
+      Bitmap.Config config) {
+    if (inBitmap != null && inBitmap.isMutable() && !inBitmap.isRecycled()) {
+      if (inBitmap.getWidth() == width && inBitmap.getHeight() == height &&
+          inBitmap.getConfig() == config) {
+        return inBitmap;
+      }
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT &&
+          inBitmap.getAllocationByteCount() >= width * height * getBytesPerPixel(config)) {
+        inBitmap.reconfigure(width, height, config);
+        return inBitmap;
+      }
+    }
+    return Bitmap.createBitmap(width, height, config);
+  }
+
+  private static int getBytesPerPixel(Bitmap.Config config) {
+    return config == Bitmap.Config.RGB_565 ? 2 : 4;
+  }
+
+  private static int getConfigCode(Bitmap.Config config) {
+    if (config == Bitmap.Config.ARGB_8888) {
+      return CONFIG_ARGB_8888;
+    } else if (config == Bitmap.Config.RGB_565) {
+      return CONFIG_RGB_565;
+    } else {
+      return -1;
+    }
+  }
+
+  @Nullable
+  private static Bitmap.Config getConfig(int code) {
+    switch (code) {
+      case CONFIG_ARGB_8888:
+        return Bitmap.Config.ARGB_8888;
+      case CONFIG_RGB_565:
+        return Bitmap.Config.RGB_565;
+      default:
+        return null;
+    }
+  }
+
+  private static void delete(File file) {
+    if (!file.delete() && file.exists()) {
+      FLog.w(TAG, "Can't delete %s", file);
+    }
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    delete(file);
+  }
+
+  private static void closeQuietly(@Nullable RandomAccessFile raf) {
+    if (raf != null) {
+      try {
+        raf.close();
+      } catch (IOException e) {
+        // Ignore
+      }
+    }
+  }
+
+  /**
+   * Computes a key for the encoded image from its size and the bytes
+   * at the beginning and the end. Returns {@code null} if failed.
+   */
+  @Nullable
+  public static String computeImageKey(EncodedImage encodedImage) {
+    InputStream is = encodedImage.getInputStream();
+    if (is == null) {
+      return null;
+    }
+
+    try {
+      return computeImageKey(is, encodedImage.getSize());
+    } finally {
+      try {
+        is.close();
+      } catch (IOException e) {
+        // Ignore
+      }
+    }
+  }
+
+  /**
+   * Computes a key for the encoded image in the stream, like
+   * {@link #computeImageKey(EncodedImage)}. The stream isn't closed.
+   *
+   * @param size the byte count of the encoded image
+   */
+  @Nullable
+  public static String computeImageKey(InputStream is, int size) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      digest.update(ByteBuffer.allocate(4).putInt(size).array());
+
+      byte[] buffer = new byte[4096];
+      update(digest, is, buffer, Math.min(size, IMAGE_KEY_SAMPLE_SIZE));
+
+      long skip = size - IMAGE_KEY_SAMPLE_SIZE * 2;
+      while (skip > 0) {
+        long skipped = is.skip(skip);
+        if (skipped <= 0) {
+          break;
+        }
+        skip -= skipped;
+      }
+      update(digest, is, buffer, Integer.MAX_VALUE);
+
+      StringBuilder sb = new StringBuilder(32);
+      for (byte b : digest.digest()) {
+        sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+        sb.append(Character.forDigit(b & 0xf, 16));
+      }
+      return sb.toString();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      return null;
+    }
+  }
+
+  // Updates at most length bytes from the stream
+  private static void update(MessageDigest digest, InputStream is, byte[] buffer, int length)
+      throws IOException {
+    int count = 0;
+    while (count < length) {
+      int n = is.read(buffer, 0, Math.min(buffer.length, length - count));
+      if (n < 0) {
+        break;
+      }
+      digest.update(buffer, 0, n);
+      count += n;
+    }
+  }
+}
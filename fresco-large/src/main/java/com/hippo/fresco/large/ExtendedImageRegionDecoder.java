@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link ImageRegionDecoder} which could decode regions
+ * with {@link RegionDecodeOptions}.
+ * <p>
+ * An {@code ExtendedImageRegionDecoder} must be thread-safe, both
+ * {@code decode()} methods could be called on different threads at the same time.
+ * <p>
+ * Use {@link ImageRegionDecoderCompat#decode(ImageRegionDecoder, Rect, RegionDecodeOptions)}
+ * to decode with options from any {@code ImageRegionDecoder}.
+ */
+public interface ExtendedImageRegionDecoder extends ImageRegionDecoder {
+
+  /**
+   * Decodes the region with the options. It might be called
+   * on different threads at the same time.
+   * <p>
+   * Decoders which decode in steps should check
+   * {@link RegionDecodeOptions#isCancelled()} between steps,
+   * and return {@code null} once it's cancelled.
+   *
+   * @param options the options, {@code null} for default options
+   */
+  @Nullable
+  Bitmap decode(Rect rect, @Nullable RegionDecodeOptions options);
+
+  /**
+   * Returns the estimated bytes held by the decoder, like encoded bytes
+   * and native decoder states, not including decoded bitmaps.
+   * <p>
+   * It's reported to the memory cache of the pipeline, which requires
+   * the size of a cached image to be stable. Return the max footprint
+   * of the decoder, not the current one.
+   */
+  int getSizeInBytes();
+}
@@ -21,6 +21,7 @@ package com.hippo.fresco.large;
  */
 
 import com.facebook.common.logging.FLog;
+import com.facebook.common.memory.MemoryTrimmableRegistry;
 import com.facebook.drawee.backends.pipeline.DraweeConfig;
 import com.facebook.imageformat.ImageFormat;
 import com.facebook.imagepipeline.decoder.ImageDecoderConfig;
@@ -67,11 +68,18 @@ public final class FrescoLarge {
 
     LargeImageDecoder largeImageDecoder = new LargeImageDecoder(config.getImageSizeDecoderMap(),
         config.getImageRegionDecoderFactoryMap(), config.getImageDecoderMap(),
-        config.getThresholdWidth(), config.getThresholdHeight());
+        config.getOpaqueImageFormatSet(), config.getThresholdPolicy(),
+        config.getDiskTileCache() != null);
     for (ImageFormat imageFormat : config.getImageFormatSet()) {
       decoderConfigBuilder.overrideDecoder(imageFormat, largeImageDecoder);
     }
 
     draweeConfigBuilder.addCustomDrawableFactory(config.getLargeDrawableFactory());
+
+    MemoryTrimmableRegistry registry = config.getMemoryTrimmableRegistry();
+    if (registry != null) {
+      registry.registerMemoryTrimmable(config.getTileCache());
+      registry.registerMemoryTrimmable(config.getTileBitmapPool());
+    }
   }
 }
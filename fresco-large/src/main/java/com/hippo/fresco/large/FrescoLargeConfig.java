@@ -20,6 +20,7 @@ package com.hippo.fresco.large;
  * Created by Hippo on 5/22/2017.
  */
 
+import com.facebook.common.memory.MemoryTrimmableRegistry;
 import com.facebook.imageformat.ImageFormat;
 import com.facebook.imagepipeline.decoder.ImageDecoder;
 import java.util.HashMap;
@@ -36,9 +37,16 @@ public class FrescoLargeConfig {
   private final Map<ImageFormat, ImageSizeDecoder> sizeDecoderMap;
   private final Map<ImageFormat, ImageRegionDecoderFactory> regionDecoderFactoryMap;
   private final Map<ImageFormat, ImageDecoder> imageDecoderMap;
+  private final Set<ImageFormat> opaqueImageFormatSet;
   private LargeDrawableFactory largeDrawableFactory;
+  private TileDecodeScheduler tileDecodeScheduler;
+  private TileBitmapPool tileBitmapPool;
+  private TileCache tileCache;
+  private final DiskTileCache diskTileCache;
   private final int thresholdWidth;
   private final int thresholdHeight;
+  private ThresholdPolicy thresholdPolicy;
+  private final MemoryTrimmableRegistry memoryTrimmableRegistry;
 
   public FrescoLargeConfig(Builder builder) {
     imageFormatSet = builder.imageFormatSet;
@@ -46,9 +54,16 @@ public class FrescoLargeConfig {
     sizeDecoderMap = builder.sizeDecoderMap;
     regionDecoderFactoryMap = builder.regionDecoderFactoryMap;
     imageDecoderMap = builder.imageDecoderMap;
+    opaqueImageFormatSet = builder.opaqueImageFormatSet;
     largeDrawableFactory = builder.largeDrawableFactory;
+    tileDecodeScheduler = builder.tileDecodeScheduler;
+    tileBitmapPool = builder.tileBitmapPool;
+    tileCache = builder.tileCache;
+    diskTileCache = builder.diskTileCache;
     thresholdWidth = builder.thresholdWidth;
     thresholdHeight = builder.thresholdHeight;
+    thresholdPolicy = builder.thresholdPolicy;
+    memoryTrimmableRegistry = builder.memoryTrimmableRegistry;
   }
 
   public Set<ImageFormat> getImageFormatSet() {
@@ -71,13 +86,44 @@ public class FrescoLargeConfig {
     return imageDecoderMap;
   }
 
+  public Set<ImageFormat> getOpaqueImageFormatSet() {
+    return opaqueImageFormatSet;
+  }
+
   public LargeDrawableFactory getLargeDrawableFactory() {
     if (largeDrawableFactory == null) {
-      largeDrawableFactory = new SubsamplingDrawableFactory();
+      largeDrawableFactory = new SubsamplingDrawableFactory(getTileDecodeScheduler(),
+          getTileBitmapPool(), getTileCache(), getDiskTileCache());
     }
     return largeDrawableFactory;
   }
 
+  public TileDecodeScheduler getTileDecodeScheduler() {
+    if (tileDecodeScheduler == null) {
+      tileDecodeScheduler = DefaultTileDecodeScheduler.getInstance();
+    }
+    return tileDecodeScheduler;
+  }
+
+  public TileBitmapPool getTileBitmapPool() {
+    if (tileBitmapPool == null) {
+      tileBitmapPool = TileBitmapPool.getInstance();
+    }
+    return tileBitmapPool;
+  }
+
+  public TileCache getTileCache() {
+    if (tileCache == null) {
+      tileCache = TileCache.getInstance();
+    }
+    return tileCache;
+  }
+
+  @Nullable
+  public DiskTileCache getDiskTileCache() {
+    return diskTileCache;
+  }
+
   public int getThresholdWidth() {
     return thresholdWidth;
   }
@@ -86,6 +132,18 @@ public class FrescoLargeConfig {
     return thresholdHeight;
   }
 
+  public ThresholdPolicy getThresholdPolicy() {
+    if (thresholdPolicy == null) {
+      thresholdPolicy = new SizeThresholdPolicy(thresholdWidth, thresholdHeight);
+    }
+    return thresholdPolicy;
+  }
+
+  @Nullable
+  public MemoryTrimmableRegistry getMemoryTrimmableRegistry() {
+    return memoryTrimmableRegistry;
+  }
+
   public static Builder newBuilder() {
     return new Builder();
   }
@@ -96,9 +154,16 @@ public class FrescoLargeConfig {
     private Map<ImageFormat, ImageSizeDecoder> sizeDecoderMap;
     private Map<ImageFormat, ImageRegionDecoderFactory> regionDecoderFactoryMap;
     private Map<ImageFormat, ImageDecoder> imageDecoderMap;
+    private Set<ImageFormat> opaqueImageFormatSet;
     private LargeDrawableFactory largeDrawableFactory;
+    private TileDecodeScheduler tileDecodeScheduler;
+    private TileBitmapPool tileBitmapPool;
+    private TileCache tileCache;
+    private DiskTileCache diskTileCache;
     private int thresholdWidth;
     private int thresholdHeight;
+    private ThresholdPolicy thresholdPolicy;
+    private MemoryTrimmableRegistry memoryTrimmableRegistry;
 
     public FrescoLargeConfig.Builder addDecoder(@Nonnull ImageFormat imageFormat,
         @Nonnull ImageRegionDecoderFactory imageRegionDecoderFactory) {
@@ -144,17 +209,97 @@ public class FrescoLargeConfig {
       return this;
     }
 
+    /**
+     * Marks images in the format as opaque. Tiles of opaque images are
+     * decoded in {@code RGB_565}, it halves the memory of tiles.
+     * Only set it for formats which never have alpha channel, like JPEG.
+     */
+    public FrescoLargeConfig.Builder setOpaque(@Nonnull ImageFormat imageFormat, boolean opaque) {
+      if (opaque) {
+        if (opaqueImageFormatSet == null) {
+          opaqueImageFormatSet = new HashSet<>();
+        }
+        opaqueImageFormatSet.add(imageFormat);
+      } else if (opaqueImageFormatSet != null) {
+        opaqueImageFormatSet.remove(imageFormat);
+      }
+      return this;
+    }
+
     public FrescoLargeConfig.Builder setLargeDrawableFactory(LargeDrawableFactory factory) {
       largeDrawableFactory = factory;
       return this;
     }
 
+    /**
+     * Sets the scheduler to decode tiles for {@link SubsamplingDrawable}.
+     * Only works if {@link #setLargeDrawableFactory(LargeDrawableFactory)} isn't called.
+     */
+    public FrescoLargeConfig.Builder setTileDecodeScheduler(TileDecodeScheduler scheduler) {
+      tileDecodeScheduler = scheduler;
+      return this;
+    }
+
+    /**
+     * Sets the pool which receives recycled tile bitmaps of {@link SubsamplingDrawable}.
+     * They are reused to decode new tiles.
+     * Only works if {@link #setLargeDrawableFactory(LargeDrawableFactory)} isn't called.
+     */
+    public FrescoLargeConfig.Builder setTileBitmapPool(TileBitmapPool pool) {
+      tileBitmapPool = pool;
+      return this;
+    }
+
+    /**
+     * Sets the cache which limits bytes of tiles in all {@link SubsamplingDrawable}s.
+     * Only works if {@link #setLargeDrawableFactory(LargeDrawableFactory)} isn't called.
+     */
+    public FrescoLargeConfig.Builder setTileCache(TileCache cache) {
+      tileCache = cache;
+      return this;
+    }
+
+    /**
+     * Sets the disk cache for tiles, it's disabled by default.
+     * Only works if {@link #setLargeDrawableFactory(LargeDrawableFactory)} isn't called.
+     */
+    public FrescoLargeConfig.Builder setDiskTileCache(@Nullable DiskTileCache cache) {
+      diskTileCache = cache;
+      return this;
+    }
+
+    /**
+     * Images whose width or height is bigger than the threshold are large images.
+     * Only works if {@link #setThresholdPolicy(ThresholdPolicy)} isn't called.
+     *
+     * @see SizeThresholdPolicy
+     */
     public FrescoLargeConfig.Builder setThresholdSize(int width, int height) {
       thresholdWidth = width;
       thresholdHeight = height;
       return this;
     }
 
+    /**
+     * Sets the policy to decide whether an image is a large image,
+     * like {@link MemoryThresholdPolicy}.
+     * It's a {@link SizeThresholdPolicy} of {@link #setThresholdSize(int, int)} by default.
+     */
+    public FrescoLargeConfig.Builder setThresholdPolicy(ThresholdPolicy policy) {
+      thresholdPolicy = policy;
+      return this;
+    }
+
+    /**
+     * Sets the registry to trim the tile cache and the tile bitmap pool on memory pressure.
+     * Pass the one of {@code ImagePipelineConfig}, so tiles are trimmed with other images.
+     */
+    public FrescoLargeConfig.Builder setMemoryTrimmableRegistry(
+        @Nullable MemoryTrimmableRegistry registry) {
+      memoryTrimmableRegistry = registry;
+      return this;
+    }
+
     public FrescoLargeConfig build() {
       return new FrescoLargeConfig(this);
     }
@@ -32,6 +32,10 @@ public interface ImageRegionDecoder extends Closeable {
 
   int getHeight();
 
+  /**
+   * Decodes the region in full resolution. It might be called on different threads,
+   * but not at the same time, unless it's an {@link ExtendedImageRegionDecoder}.
+   */
   @Nullable
   Bitmap decode(Rect rect);
 
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import javax.annotation.Nullable;
+
+/**
+ * Helper to use {@link ExtendedImageRegionDecoder} features on any {@link ImageRegionDecoder}.
+ */
+public final class ImageRegionDecoderCompat {
+  private ImageRegionDecoderCompat() {}
+
+  /**
+   * Decodes the region with the options.
+   * <p>
+   * If the decoder isn't an {@link ExtendedImageRegionDecoder}, the region
+   * is decoded in full resolution, then scaled and converted to match
+   * the options. {@link RegionDecodeOptions#inBitmap} isn't used in this case.
+   * The decoder isn't declared thread-safe, calls to it are serialized
+   * with the lock of the decoder.
+   */
+  @Nullable
+  public static Bitmap decode(ImageRegionDecoder decoder, Rect rect,
+      @Nullable RegionDecodeOptions options) {
+    if (decoder instanceof ExtendedImageRegionDecoder) {
+      return ((ExtendedImageRegionDecoder) decoder).decode(rect, options);
+    }
+
+    Bitmap bitmap;
+    synchronized (decoder) {
+      // It might be cancelled while waiting for the lock
+      if (options != null && options.isCancelled()) {
+        return null;
+      }
+      bitmap = decoder.decode(rect);
+    }
+    if (bitmap == null || options == null) {
+      return bitmap;
+    }
+    if (options.isCancelled()) {
+      // Skip scaling and converting
+      bitmap.recycle();
+      return null;
+    }
+
+    if (options.inSampleSize > 1) {
+      int width = RegionDecodeOptions.getSampledSize(bitmap.getWidth(), options.inSampleSize);
+      int height = RegionDecodeOptions.getSampledSize(bitmap.getHeight(), options.inSampleSize);
+      Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+      if (scaled != bitmap) {
+        bitmap.recycle();
+        bitmap = scaled;
+      }
+    }
+
+    if (options.inPreferredConfig != null && bitmap.getConfig() != options.inPreferredConfig) {
+      Bitmap copy = bitmap.copy(options.inPreferredConfig, true);
+      if (copy != null) {
+        bitmap.recycle();
+        bitmap = copy;
+      }
+    }
+
+    return bitmap;
+  }
+
+  /**
+   * Returns the estimated bytes held by the decoder,
+   * see {@link ExtendedImageRegionDecoder#getSizeInBytes()}.
+   * Returns {@code 0} if the decoder isn't an {@link ExtendedImageRegionDecoder}.
+   */
+  public static int getSizeInBytes(ImageRegionDecoder decoder) {
+    if (decoder instanceof ExtendedImageRegionDecoder) {
+      return ((ExtendedImageRegionDecoder) decoder).getSizeInBytes();
+    }
+    return 0;
+  }
+}
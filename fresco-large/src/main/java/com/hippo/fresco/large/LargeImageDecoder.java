@@ -31,8 +31,10 @@ import com.facebook.imagepipeline.decoder.ImageDecoder;
 import com.facebook.imagepipeline.image.CloseableImage;
 import com.facebook.imagepipeline.image.EncodedImage;
 import com.facebook.imagepipeline.image.QualityInfo;
+import com.hippo.fresco.large.size.HeaderImageSizeDecoder;
 import java.lang.reflect.Field;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 public class LargeImageDecoder implements ImageDecoder {
@@ -48,20 +50,61 @@ public class LargeImageDecoder implements ImageDecoder {
   private final Map<ImageFormat, ImageRegionDecoderFactory> regionDecoderFactoryMap;
   @Nullable
   private final Map<ImageFormat, ImageDecoder> imageDecoderMap;
-  private final int thresholdWidth;
-  private final int thresholdHeight;
+  @Nullable
+  private final Set<ImageFormat> opaqueImageFormatSet;
+  private final ThresholdPolicy thresholdPolicy;
+  // Image keys are only used by DiskTileCache
+  private final boolean computeImageKey;
+
+  public LargeImageDecoder(
+      Map<ImageFormat, ImageSizeDecoder> sizeDecoderMap,
+      Map<ImageFormat, ImageRegionDecoderFactory> regionDecoderFactoryMap,
+      Map<ImageFormat, ImageDecoder> imageDecoderMap,
+      int thresholdWidth,
+      int thresholdHeight) {
+    this(sizeDecoderMap, regionDecoderFactoryMap, imageDecoderMap, null,
+        thresholdWidth, thresholdHeight);
+  }
 
   public LargeImageDecoder(
       Map<ImageFormat, ImageSizeDecoder> sizeDecoderMap,
       Map<ImageFormat, ImageRegionDecoderFactory> regionDecoderFactoryMap,
       Map<ImageFormat, ImageDecoder> imageDecoderMap,
+      Set<ImageFormat> opaqueImageFormatSet,
       int thresholdWidth,
       int thresholdHeight) {
+    this(sizeDecoderMap, regionDecoderFactoryMap, imageDecoderMap, opaqueImageFormatSet,
+        new SizeThresholdPolicy(thresholdWidth, thresholdHeight));
+  }
+
+  public LargeImageDecoder(
+      Map<ImageFormat, ImageSizeDecoder> sizeDecoderMap,
+      Map<ImageFormat, ImageRegionDecoderFactory> regionDecoderFactoryMap,
+      Map<ImageFormat, ImageDecoder> imageDecoderMap,
+      Set<ImageFormat> opaqueImageFormatSet,
+      ThresholdPolicy thresholdPolicy) {
+    this(sizeDecoderMap, regionDecoderFactoryMap, imageDecoderMap, opaqueImageFormatSet,
+        thresholdPolicy, false);
+  }
+
+  /**
+   * @param computeImageKey {@code true} to compute the key of each large image
+   *                        for {@link DiskTileCache}, it costs a read of the encoded bytes.
+   *                        Other constructors don't compute it.
+   */
+  public LargeImageDecoder(
+      Map<ImageFormat, ImageSizeDecoder> sizeDecoderMap,
+      Map<ImageFormat, ImageRegionDecoderFactory> regionDecoderFactoryMap,
+      Map<ImageFormat, ImageDecoder> imageDecoderMap,
+      Set<ImageFormat> opaqueImageFormatSet,
+      ThresholdPolicy thresholdPolicy,
+      boolean computeImageKey) {
     this.sizeDecoderMap = sizeDecoderMap;
     this.regionDecoderFactoryMap = regionDecoderFactoryMap;
     this.imageDecoderMap = imageDecoderMap;
-    this.thresholdWidth = thresholdWidth;
-    this.thresholdHeight = thresholdHeight;
+    this.opaqueImageFormatSet = opaqueImageFormatSet;
+    this.thresholdPolicy = thresholdPolicy;
+    this.computeImageKey = computeImageKey;
 
     this.defaultSizeDecoder = new DefaultImageSizeDecoder();
   }
@@ -91,10 +134,6 @@ public class LargeImageDecoder implements ImageDecoder {
     return defaultImageDecoder;
   }
 
-  private boolean isLargeEnough(int width, int height) {
-    return width > thresholdWidth || height > thresholdHeight;
-  }
-
   @Override
   public CloseableImage decode(EncodedImage encodedImage, int length, QualityInfo qualityInfo,
       ImageDecodeOptions options) {
@@ -104,18 +143,30 @@ public class LargeImageDecoder implements ImageDecoder {
     if (sizeDecoderMap != null) {
       sizeDecoder = sizeDecoderMap.get(imageFormat);
     }
-    if (sizeDecoder == null) {
-      sizeDecoder = this.defaultSizeDecoder;
-    }
 
-    Pair<Integer, Integer> size = sizeDecoder.decode(encodedImage, length);
-    if (size != null && isLargeEnough(size.first, size.second)) {
+    Pair<Integer, Integer> size = null;
+    if (sizeDecoder != null) {
+      size = sizeDecoder.decode(encodedImage, length);
+    } else {
+      // Every image passes here, try the cheap header parser first
+      sizeDecoder = HeaderImageSizeDecoder.forImageFormat(imageFormat);
+      if (sizeDecoder != null) {
+        size = sizeDecoder.decode(encodedImage, length);
+      }
+      if (size == null) {
+        size = defaultSizeDecoder.decode(encodedImage, length);
+      }
+    }
+    if (size != null && thresholdPolicy.isLargeEnough(encodedImage, size.first, size.second)) {
       ImageRegionDecoderFactory factory = regionDecoderFactoryMap.get(imageFormat);
       if (factory != null) {
         ImageRegionDecoder decoder =
             factory.createImageRegionDecoder(encodedImage, length, qualityInfo, options);
         if (decoder != null) {
-          return new ClosableLargeImage(decoder);
+          boolean opaque = opaqueImageFormatSet != null &&
+              opaqueImageFormatSet.contains(imageFormat);
+          String imageKey = computeImageKey ? DiskTileCache.computeImageKey(encodedImage) : null;
+          return new ClosableLargeImage(decoder, opaque, imageKey);
         }
       }
     }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.facebook.imageutils.BitmapUtil;
+
+/**
+ * The image is large if the fully decoded bitmap is too big for the device.
+ * <p>
+ * The decoded size is the image size divided by the sample size of
+ * the {@link EncodedImage}, which is set by the resize options of the request.
+ * It's too big if:
+ * <ul>
+ * <li>its width or height is bigger than the max texture size,
+ * it can't be drawn with hardware acceleration</li>
+ * <li>its byte count is bigger than a fraction of the heap limit of the device</li>
+ * </ul>
+ * So the same image might be decoded fully on a device with a large heap,
+ * but decoded as a large image on a low-end device. The heap limit is read once,
+ * the same image is always routed the same way on a device, whatever the heap usage
+ * is at the moment.
+ */
+public class MemoryThresholdPolicy implements ThresholdPolicy {
+
+  /**
+   * A conservative max texture size, most devices support it or more.
+   */
+  public static final int DEFAULT_MAX_TEXTURE_SIZE = 2048;
+  public static final float DEFAULT_HEAP_FRACTION = 0.25f;
+  // ARGB_8888, Fresco decodes static images in it by default
+  public static final int DEFAULT_BYTES_PER_PIXEL = 4;
+
+  private final int maxTextureSize;
+  private final float heapFraction;
+  private final int bytesPerPixel;
+  private final long maxHeap;
+
+  public MemoryThresholdPolicy() {
+    this(DEFAULT_MAX_TEXTURE_SIZE, DEFAULT_HEAP_FRACTION, DEFAULT_BYTES_PER_PIXEL);
+  }
+
+  /**
+   * @param bitmapConfig the bitmap config of the pipeline,
+   *                     see {@code ImagePipelineConfig.Builder.setBitmapsConfig()}
+   */
+  public MemoryThresholdPolicy(Bitmap.Config bitmapConfig) {
+    this(DEFAULT_MAX_TEXTURE_SIZE, DEFAULT_HEAP_FRACTION,
+        BitmapUtil.getPixelSizeForBitmapConfig(bitmapConfig));
+  }
+
+  /**
+   * @param maxTextureSize the max width and height of a bitmap to draw,
+   *                       {@code Canvas.getMaximumBitmapWidth()} of a hardware canvas
+   * @param heapFraction the max fraction of the heap limit for the decoded bitmap
+   * @param bytesPerPixel the bytes per pixel of the decoded bitmap
+   */
+  public MemoryThresholdPolicy(int maxTextureSize, float heapFraction, int bytesPerPixel) {
+    this(maxTextureSize, heapFraction, bytesPerPixel, Runtime.getRuntime().maxMemory());
+  }
+
+  /**
+   * @param maxHeap the heap limit in bytes, {@code Runtime.maxMemory()} by default
+   * @see #MemoryThresholdPolicy(int, float, int)
+   */
+  public MemoryThresholdPolicy(int maxTextureSize, float heapFraction, int bytesPerPixel,
+      long maxHeap) {
+    this.maxTextureSize = maxTextureSize;
+    this.heapFraction = heapFraction;
+    this.bytesPerPixel = bytesPerPixel;
+    this.maxHeap = maxHeap;
+  }
+
+  @Override
+  public boolean isLargeEnough(EncodedImage encodedImage, int width, int height) {
+    int sampleSize = Math.max(1, encodedImage.getSampleSize());
+    long decodedWidth = RegionDecodeOptions.getSampledSize(width, sampleSize);
+    long decodedHeight = RegionDecodeOptions.getSampledSize(height, sampleSize);
+    if (decodedWidth > maxTextureSize || decodedHeight > maxTextureSize) {
+      return true;
+    }
+
+    long bytes = decodedWidth * decodedHeight * bytesPerPixel;
+    return bytes > maxHeap * heapFraction;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import javax.annotation.Nullable;
+
+/**
+ * Options for {@link ExtendedImageRegionDecoder#decode(android.graphics.Rect, RegionDecodeOptions)}.
+ */
+public class RegionDecodeOptions {
+
+  /**
+   * The sample size, it's a power of 2. The decoded bitmap is about
+   * {@code 1 / inSampleSize} of the region in each dimension.
+   */
+  public int inSampleSize = 1;
+
+  /**
+   * The preferred config of the decoded bitmap, {@code null} for the decoder's choice.
+   */
+  @Nullable
+  public Bitmap.Config inPreferredConfig;
+
+  /**
+   * A mutable bitmap to decode into, could be {@code null}.
+   * If the returned bitmap isn't this one, it's not used,
+   * the caller is still the owner of it.
+   */
+  @Nullable
+  public Bitmap inBitmap;
+
+  /**
+   * The token to check whether the decode is still wanted, could be {@code null}.
+   * A decoder could give up a cancelled decode and return {@code null}.
+   */
+  @Nullable
+  public CancellationToken cancellationToken;
+
+  /**
+   * Returns {@code true} if {@link #cancellationToken} is cancelled.
+   */
+  public boolean isCancelled() {
+    return cancellationToken != null && cancellationToken.isCancelled();
+  }
+
+  /**
+   * Returns the size of the decoded bitmap in one dimension. It's rounded down
+   * like {@code BitmapRegionDecoder} does. A bigger {@link #inBitmap} keeps its size,
+   * the extra row and column would show stale pixels.
+   */
+  public static int getSampledSize(int size, int sampleSize) {
+    return Math.max(1, size / sampleSize);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Matrix;
+
+/**
+ * Calculates the power-of-two sample from the exact scale.
+ * <p>
+ * An exact sample {@code s} lies between two powers of two, {@code 2^k <= s < 2^(k+1)}.
+ * The bias decides where to switch to the coarser one, the chosen sample is
+ * {@code 2^floor(log2(s) + 0.5 + bias)}:
+ * <ul>
+ * <li>{@link #BIAS_QUALITY} never decodes fewer pixels than displayed</li>
+ * <li>{@link #BIAS_BALANCED} picks the nearest one in log scale</li>
+ * <li>{@link #BIAS_MEMORY} switches to the coarser one soon after {@code 2^k}</li>
+ * </ul>
+ */
+public final class SampleCalculator {
+  private SampleCalculator() {}
+
+  public static final float BIAS_QUALITY = -0.5f;
+  public static final float BIAS_BALANCED = 0.0f;
+  public static final float BIAS_MEMORY = 0.4f;
+
+  // Absorbs the error of log2() for exact powers of two
+  private static final double EPSILON = 1e-4;
+  private static final double LN_2 = Math.log(2);
+
+  /**
+   * Returns the power-of-two sample for the exact sample.
+   *
+   * @param sample the exact sample, the count of source pixels for one displayed pixel
+   * @param bias the bias in {@code [-0.5, 0.5)}, see {@link SampleCalculator}
+   */
+  public static int calculateSample(float sample, float bias) {
+    if (!(sample > 1.0f)) {
+      // Also NaN
+      return 1;
+    }
+    if (Float.isInfinite(sample)) {
+      return 1 << 30;
+    }
+    int k = (int) Math.floor(Math.log(sample) / LN_2 + 0.5 + bias + EPSILON);
+    return 1 << Math.max(0, Math.min(30, k));
+  }
+
+  /**
+   * Returns the power-of-two sample to draw the image with the matrix.
+   * The scale of the matrix is the length of the mapped unit vectors,
+   * it works for rotated matrices. The larger one of x and y is used.
+   *
+   * @param matrixValues the values of the matrix, see {@link Matrix#getValues(float[])}
+   */
+  public static int calculateSample(float[] matrixValues, float bias) {
+    float scaleX = (float) Math.hypot(matrixValues[Matrix.MSCALE_X],
+        matrixValues[Matrix.MSKEW_Y]);
+    float scaleY = (float) Math.hypot(matrixValues[Matrix.MSKEW_X],
+        matrixValues[Matrix.MSCALE_Y]);
+    return calculateSample(1.0f / Math.max(scaleX, scaleY), bias);
+  }
+
+  /**
+   * Returns the power-of-two sample to fit the image in the window.
+   */
+  public static int calculateFitSample(int width, int height, int windowWidth, int windowHeight,
+      float bias) {
+    return calculateSample(Math.max((float) width / windowWidth,
+        (float) height / windowHeight), bias);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import com.facebook.imageutils.BitmapUtil;
+import java.util.ArrayList;
+import java.util.HashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Tiles of one image, shared by all {@link SubsamplingDrawable}s of the image,
+ * like a thumbnail strip and a full view.
+ * <p>
+ * A tile is identified by its sample and its rect. It's decoded once,
+ * its bitmap is shared by all drawables which show it. Tiles are
+ * reference-counted, the decoding task is cancelled and the bitmap
+ * is put back to the pool when the last drawable releases the tile.
+ * <p>
+ * All methods must be called on main thread.
+ *
+ * @see ClosableLargeImage#getTileStore()
+ */
+public class SharedTileStore {
+
+  private final HashMap<Key, SharedTile> tiles = new HashMap<>();
+  // Reused to look up tiles
+  private final Key lookupKey = new Key();
+  // Bytes of all decoded bitmaps
+  private volatile int size;
+
+  /**
+   * Returns the shared tile of the sample and the rect, creates it if it's missing.
+   * The callback is notified when the tile is decoded.
+   * Call {@link #release(SharedTile, Callback)} when the tile isn't used.
+   */
+  SharedTile obtain(int sample, Rect rect, Callback callback) {
+    lookupKey.set(sample, rect);
+    SharedTile tile = tiles.get(lookupKey);
+    if (tile == null) {
+      Key key = new Key();
+      key.set(sample, rect);
+      tile = new SharedTile(key);
+      tiles.put(key, tile);
+    }
+    ++tile.refCount;
+    tile.callbacks.add(callback);
+    return tile;
+  }
+
+  /**
+   * Releases the shared tile obtained by {@link #obtain(int, Rect, Callback)}.
+   */
+  void release(SharedTile tile, Callback callback) {
+    tile.callbacks.remove(callback);
+    if (--tile.refCount > 0) {
+      return;
+    }
+
+    tiles.remove(tile.key);
+    if (tile.task != null) {
+      tile.task.cancel();
+      tile.task = null;
+    }
+    if (tile.bitmap != null) {
+      size -= BitmapUtil.getSizeInBytes(tile.bitmap);
+      if (tile.bitmapPool != null) {
+        tile.bitmapPool.put(tile.bitmap);
+      }
+      tile.bitmap = null;
+    }
+  }
+
+  /**
+   * Sets the result of the decoding task of the shared tile, notifies all callbacks.
+   *
+   * @param bitmapPool the pool to put the bitmap when the tile is released
+   */
+  void onDecoded(SharedTile tile, @Nullable Bitmap bitmap, TileBitmapPool bitmapPool) {
+    tile.task = null;
+    tile.bitmap = bitmap;
+    tile.bitmapPool = bitmapPool;
+    tile.failed = bitmap == null;
+    if (bitmap != null) {
+      size += BitmapUtil.getSizeInBytes(bitmap);
+    }
+    for (int i = 0, n = tile.callbacks.size(); i < n; i++) {
+      tile.callbacks.get(i).onTileDecoded(bitmap);
+    }
+  }
+
+  /**
+   * Returns the bytes of decoded tiles. It could be called on any thread.
+   */
+  public int getSizeInBytes() {
+    return size;
+  }
+
+  /**
+   * Returns the count of shared tiles.
+   */
+  public int getCount() {
+    return tiles.size();
+  }
+
+  interface Callback {
+    void onTileDecoded(@Nullable Bitmap bitmap);
+  }
+
+  static final class SharedTile {
+    private final Key key;
+    private int refCount;
+    private final ArrayList<Callback> callbacks = new ArrayList<>(2);
+    @Nullable
+    private TileBitmapPool bitmapPool;
+
+    // The decoded bitmap
+    @Nullable
+    Bitmap bitmap;
+    // True if can't decode the source
+    boolean failed;
+    // The running decoding task, it's cancelled when the tile is released
+    @Nullable
+    TileDecodeTask task;
+
+    private SharedTile(Key key) {
+      this.key = key;
+    }
+  }
+
+  private static final class Key {
+    private int sample;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    void set(int sample, Rect rect) {
+      this.sample = sample;
+      this.left = rect.left;
+      this.top = rect.top;
+      this.right = rect.right;
+      this.bottom = rect.bottom;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return sample == key.sample && left == key.left && top == key.top &&
+          right == key.right && bottom == key.bottom;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = sample;
+      result = 31 * result + left;
+      result = 31 * result + top;
+      result = 31 * result + right;
+      result = 31 * result + bottom;
+      return result;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import com.facebook.imagepipeline.image.EncodedImage;
+
+/**
+ * The image is large if its width or height is bigger than the threshold.
+ * It's the default policy, see {@link FrescoLargeConfig.Builder#setThresholdSize(int, int)}.
+ */
+public class SizeThresholdPolicy implements ThresholdPolicy {
+
+  private final int thresholdWidth;
+  private final int thresholdHeight;
+
+  public SizeThresholdPolicy(int thresholdWidth, int thresholdHeight) {
+    this.thresholdWidth = thresholdWidth;
+    this.thresholdHeight = thresholdHeight;
+  }
+
+  @Override
+  public boolean isLargeEnough(EncodedImage encodedImage, int width, int height) {
+    return width > thresholdWidth || height > thresholdHeight;
+  }
+}
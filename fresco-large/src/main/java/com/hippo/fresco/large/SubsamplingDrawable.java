@@ -30,23 +30,48 @@ import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.util.SparseArray;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.drawable.base.DrawableWithCaches;
-import java.util.ArrayList;
-import java.util.List;
+import com.facebook.imageutils.BitmapUtil;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public class SubsamplingDrawable extends Drawable implements DrawableWithCaches {
 
   private static final boolean DEBUG = true;
 
+  /**
+   * The max width and height of tiles. A region decoder which stores
+   * the image in tiles of this size could decode each tile as is.
+   */
+  public static final int TILE_SIZE = 512;
+
+  // The zoom hint expires after this time, in milliseconds
+  private static final long ZOOM_HINT_TIMEOUT = 300;
+  // How far ahead of the motion to prefetch, in milliseconds
+  private static final long PREFETCH_LOOKAHEAD = 300;
+  // The motion is considered stopped if no frame is drawn in this time
+  private static final long VELOCITY_TIMEOUT = 100;
+
   private ImageRegionDecoder decoder;
   private DecoderReleaser releaser;
+  private final TileDecodeScheduler scheduler;
+  private final TileBitmapPool bitmapPool;
+  private final TileCache tileCache;
+  @Nullable
+  private DiskTileCache diskTileCache;
+  @Nullable
+  private String imageKey;
+  // Shared with other drawables of the image, or owned by this drawable
+  private SharedTileStore tileStore = new SharedTileStore();
 
   private final int width;
   private final int height;
+  // Opaque image tiles are decoded in RGB_565
+  private final boolean opaque;
+  private final Bitmap.Config tileConfig;
   private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
 
   private final Matrix matrix = new Matrix();
@@ -64,23 +89,65 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
   // The visible rect of the image
   private RectF visibleRectF = new RectF();
   private Rect visibleRect = new Rect();
+  private boolean visibleRectDirty = true;
+  // True if invalidateSelf() is called and draw() isn't called yet
+  private boolean invalidatePending;
+  // The visible quad of the image, the window corners mapped to the image.
+  // It's only used if the matrix rotates or skews.
+  private final float[] visibleQuad = new float[8];
+  private boolean visibleQuadUsed;
+  // 1 if the visible quad is counterclockwise in the image coordinates, -1 if clockwise
+  private float visibleQuadOrientation;
 
   // The max width and height for tile
-  private int maxTileSize = 512;
+  private int maxTileSize = TILE_SIZE;
 
+  // The bias to choose sample, see SampleCalculator
+  private float sampleBias = SampleCalculator.BIAS_QUALITY;
   // Sample for current rendered image
   private int currentSample;
   // Sample for image fill windows
   private int fullSample;
-  // Whether draw full sample tiles
-  private boolean drawFullSampleTiles;
-  private final SparseArray<List<Tile>> tilesMap = new SparseArray<>();
+  private final SparseArray<TileLevel> levelMap = new SparseArray<>();
+  // The samples which tile levels are arranged for, see arrangeLevels()
+  private int arrangedCurrentSample;
+  private int arrangedFullSample;
+
+  // The max count of tiles to prefetch ahead of the motion
+  private int prefetchMargin = 1;
+  // The velocity of the visible rect in the image, in pixels per millisecond
+  private float velocityX;
+  private float velocityY;
+  private float lastVisibleCenterX;
+  private float lastVisibleCenterY;
+  private int lastVisibleSample;
+  private long lastVisibleTime;
+
+  // The last time the zoom-in hint is received
+  private long zoomInHintTime;
+  // The sample whose visible tiles are preloaded for zooming in, 0 for none
+  private int preloadSample;
 
   private RectF debugRectF;
   private Paint debugPaint;
 
   public SubsamplingDrawable(CloseableReference<ImageRegionDecoder> decoderReference) {
+    this(decoderReference, DefaultTileDecodeScheduler.getInstance(), TileBitmapPool.getInstance(),
+        TileCache.getInstance(), false);
+  }
+
+  /**
+   * @param opaque {@code true} if the image has no alpha channel
+   */
+  public SubsamplingDrawable(CloseableReference<ImageRegionDecoder> decoderReference,
+      TileDecodeScheduler scheduler, TileBitmapPool bitmapPool, TileCache tileCache,
+      boolean opaque) {
     this.decoder = decoderReference.get();
+    this.scheduler = scheduler;
+    this.bitmapPool = bitmapPool;
+    this.tileCache = tileCache;
+    this.opaque = opaque;
+    this.tileConfig = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
 
     releaser = new DecoderReleaser(decoderReference);
     releaser.obtain();
@@ -97,19 +164,159 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
     }
   }
 
+  /**
+   * Sets the disk cache to read tiles before decoding, and to save decoded tiles.
+   * Call it before the drawable is drawn.
+   *
+   * @param imageKey the key to identify the image in the cache
+   */
+  public void setDiskTileCache(@Nullable DiskTileCache diskTileCache, @Nullable String imageKey) {
+    this.diskTileCache = diskTileCache;
+    this.imageKey = imageKey;
+  }
+
+  /**
+   * Sets the store to share tiles with other drawables of the same image,
+   * see {@link ClosableLargeImage#getTileStore()}.
+   * Call it before the drawable is drawn.
+   */
+  public void setTileStore(SharedTileStore tileStore) {
+    this.tileStore = tileStore;
+  }
+
+  /**
+   * Sets the max count of tiles to prefetch ahead of the motion,
+   * {@code 0} to disable prefetching. The default value is {@code 1}.
+   * <p>
+   * The motion is measured from the visible rect of successive frames.
+   * Prefetched tiles are decoded at {@link TileDecodeTask#PRIORITY_PREFETCH},
+   * they are cancelled if the motion changes direction.
+   */
+  public void setPrefetchMargin(int prefetchMargin) {
+    this.prefetchMargin = Math.max(0, prefetchMargin);
+  }
+
+  /**
+   * Hints that the image is being zoomed, call it from
+   * {@link com.hippo.fresco.large.gesture.GestureRecognizer.Listener#onScale(float, float, float)}.
+   * <p>
+   * While zooming in, visible tiles of the next smaller sample are decoded at
+   * {@link TileDecodeTask#PRIORITY_PREFETCH}, so they are ready when the sample switches.
+   * The hint expires in a short time if it isn't renewed.
+   *
+   * @param factor the scale factor of this event, greater than {@code 1} for zooming in
+   */
+  public void setZoomHint(float factor) {
+    if (factor > 1.0f) {
+      zoomInHintTime = SystemClock.uptimeMillis();
+    } else if (factor < 1.0f) {
+      zoomInHintTime = 0;
+    }
+  }
+
+  /**
+   * Sets the bias to choose the sample from the scale, from
+   * {@link SampleCalculator#BIAS_QUALITY} to {@link SampleCalculator#BIAS_MEMORY}.
+   * The default value is {@link SampleCalculator#BIAS_QUALITY}, the largest
+   * power of two not bigger than the exact sample.
+   */
+  public void setSampleBias(float sampleBias) {
+    if (this.sampleBias != sampleBias) {
+      this.sampleBias = sampleBias;
+      ensureFullTiles();
+      invalidateOnce();
+    }
+  }
+
   @Override
   protected void onBoundsChange(Rect bounds) {
     windowWidth = bounds.width();
     windowHeight = bounds.height();
     windowOffsetX = bounds.left;
     windowOffsetY = bounds.top;
+    visibleRectDirty = true;
+    // The host might have dropped the last invalidation
+    invalidatePending = false;
     ensureFullTiles();
   }
 
-  private static int calculateSample(int scaleX, int scaleY) {
-    int sample = Math.max(scaleX, scaleY);
-    sample = Math.max(1, sample);
-    return prevPow2(sample);
+  @Override
+  public boolean setVisible(boolean visible, boolean restart) {
+    // The host might have dropped invalidations while it's invisible
+    invalidatePending = false;
+    return super.setVisible(visible, restart);
+  }
+
+  /**
+   * Sets the matrix to map the image to the bounds, {@code null} for identity.
+   * <p>
+   * All transform methods only record the change and invalidate the drawable.
+   * The visible rect and tiles are updated once in next {@link #draw(Canvas)},
+   * no matter how many changes are made in one frame.
+   */
+  public void setMatrix(@Nullable Matrix matrix) {
+    if (matrix == null) {
+      this.matrix.reset();
+    } else {
+      this.matrix.set(matrix);
+    }
+    onMatrixChanged();
+  }
+
+  /**
+   * Copies the matrix to map the image to the bounds into {@code out}.
+   */
+  public void getMatrix(Matrix out) {
+    out.set(matrix);
+  }
+
+  /**
+   * Post-concats the matrix.
+   */
+  public void concatMatrix(Matrix matrix) {
+    this.matrix.postConcat(matrix);
+    onMatrixChanged();
+  }
+
+  /**
+   * Translates the image in the bounds.
+   */
+  public void translate(float dx, float dy) {
+    matrix.postTranslate(dx, dy);
+    onMatrixChanged();
+  }
+
+  /**
+   * Scales the image around the point in the bounds.
+   */
+  public void scale(float factor, float px, float py) {
+    matrix.postScale(factor, factor, px, py);
+    onMatrixChanged();
+  }
+
+  /**
+   * Rotates the image around the point in the bounds.
+   */
+  public void rotate(float degrees, float px, float py) {
+    matrix.postRotate(degrees, px, py);
+    onMatrixChanged();
+  }
+
+  private void onMatrixChanged() {
+    matrixValueDirty = true;
+    invertedMatrixDirty = true;
+    visibleRectDirty = true;
+    invalidateOnce();
+  }
+
+  // Invalidates the drawable if it isn't invalidated since last draw,
+  // many tiles could be loaded in one frame
+  private void invalidateOnce() {
+    if (!invalidatePending) {
+      // Without a callback the invalidation is dropped, draw() might never come
+      invalidatePending = getCallback() != null;
+      invalidateSelf();
+    }
   }
 
   private void ensureFullTiles() {
@@ -119,70 +326,79 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
     }
 
     // Get the sample to fill window
-    int fullSample = calculateSample(width / windowWidth, height / windowHeight);
+    int fullSample = SampleCalculator.calculateFitSample(width, height,
+        windowWidth, windowHeight, sampleBias);
     if (this.fullSample == fullSample) {
       // full sample is still the same
       return;
     }
     this.fullSample = fullSample;
 
-    // Get the tile list to fill window
-    List<Tile> fullTileList = tilesMap.get(fullSample);
-    if (fullTileList == null) {
-      fullTileList = createTileList(fullSample);
-      tilesMap.put(fullSample, fullTileList);
-    }
+    // Get the tile level to fill window
+    TileLevel fullLevel = getTileLevel(fullSample);
 
-    // Ensure the fill-window tiles list loaded
-    for (Tile tile : fullTileList) {
-      tile.load();
+    // Ensure the fill-window tiles loaded
+    Tile[] tiles = fullLevel.tiles;
+    for (int i = 0, n = tiles.length; i < n; i++) {
+      tiles[i].load(TileDecodeTask.PRIORITY_FALLBACK);
     }
 
-    gc();
+    arrangeLevels(Math.max(1, Math.min(currentSample, fullSample)), fullSample);
   }
 
-  private void gc() {
-    for (int i = 0, len = tilesMap.size(); i < len; i++) {
-      final int sample = tilesMap.keyAt(i);
-      final List<Tile> list = tilesMap.valueAt(i);
-      if (list == null) {
-        continue;
-      }
+  /**
+   * Recycles tiles which are no longer needed after current sample or full sample changed.
+   * <p>
+   * Full sample tiles are always kept. For current sample and intermediate samples,
+   * only visible tiles are kept, invisible tiles are recycled in
+   * {@link TileLevel#updateVisibleRange(Rect, boolean)} as soon as they
+   * become invisible. All tiles in the other samples are recycled.
+   * So only the levels changing role need to be visited here.
+   */
+  private void arrangeLevels(int currentSample, int fullSample) {
+    int oldCurrentSample = arrangedCurrentSample;
+    int oldFullSample = arrangedFullSample;
+    if (oldCurrentSample == currentSample && oldFullSample == fullSample) {
+      return;
+    }
+    arrangedCurrentSample = currentSample;
+    arrangedFullSample = fullSample;
+
+    for (int i = 0, len = levelMap.size(); i < len; i++) {
+      final TileLevel level = levelMap.valueAt(i);
+      final int sample = level.sample;
+      final boolean wasFull = sample == oldFullSample;
+      final boolean wasKept = sample >= oldCurrentSample && sample < oldFullSample;
 
       if (sample == fullSample) {
         // Always keep it
-      } else if (sample == currentSample) {
-        // Only recycle invisible tiles for current sample
-        for (Tile tile : list) {
-          if (!tile.isVisible()) {
-            tile.recycle();
-          }
+      } else if (sample >= currentSample && sample < fullSample) {
+        if (wasFull) {
+          // Only keep visible tiles
+          level.recycleInvisibleTiles();
         }
-      } else {
-        // Recycle all tiles for all the other samples
-        for (Tile tile : list) {
-          tile.recycle();
+        if (sample != currentSample) {
+          // Only current sample tiles are prefetched
+          level.updatePrefetchRange(0, 0, 0, 0);
         }
+      } else if (wasFull) {
+        level.recycleAllTiles();
+      } else if (wasKept || sample == preloadSample) {
+        // Only visible and prefetched tiles are loaded
+        level.updatePrefetchRange(0, 0, 0, 0);
+        level.updateVisibleRange(null, true);
       }
     }
   }
 
-  // Creates a tile list for the sample, the rect of each tile is filled
-  private List<Tile> createTileList(int sample) {
-    int step = maxTileSize * sample;
-    List<Tile> list = new ArrayList<>(ceilDiv(width, step) * ceilDiv(height, step));
-
-    for (int y = 0; y < height; y += step) {
-      for (int x = 0; x < width; x += step) {
-        int w = Math.min(step, width - x);
-        int h = Math.min(step, height - y);
-        Rect rect = new Rect(x, y, x + w, y + h);
-        Tile tile = new Tile(sample, rect);
-        list.add(tile);
-      }
+  // Gets the tile level for the sample, creates it if it doesn't exist
+  private TileLevel getTileLevel(int sample) {
+    TileLevel level = levelMap.get(sample);
+    if (level == null) {
+      level = new TileLevel(sample);
+      levelMap.put(sample, level);
     }
-
-    return list;
+    return level;
   }
 
   private float[] getMatrixValue() {
@@ -203,19 +419,45 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
 
   private int getCurrentSample() {
     float[] matrixValue = getMatrixValue();
-    currentSample = calculateSample((int) matrixValue[Matrix.MSCALE_X],
-        (int) matrixValue[Matrix.MSCALE_Y]);
+    currentSample = SampleCalculator.calculateSample(matrixValue, sampleBias);
     // Current sample can't be bigger than full sample
     currentSample = Math.min(currentSample, fullSample);
     return currentSample;
   }
 
   private Rect getVisibleRect() {
-    visibleRectF.set(windowOffsetX, windowOffsetY,
-        windowOffsetX + windowWidth, windowOffsetY + windowHeight);
+    if (!visibleRectDirty) {
+      return visibleRect;
+    }
+    visibleRectDirty = false;
+
     Matrix matrix = getInvertedMatrix();
-    matrix.mapRect(visibleRectF);
+    float[] quad = visibleQuad;
+    quad[0] = windowOffsetX;
+    quad[1] = windowOffsetY;
+    quad[2] = windowOffsetX + windowWidth;
+    quad[3] = windowOffsetY;
+    quad[4] = windowOffsetX + windowWidth;
+    quad[5] = windowOffsetY + windowHeight;
+    quad[6] = windowOffsetX;
+    quad[7] = windowOffsetY + windowHeight;
+    matrix.mapPoints(quad);
 
+    float[] matrixValue = getMatrixValue();
+    visibleQuadUsed = matrixValue[Matrix.MSKEW_X] != 0.0f || matrixValue[Matrix.MSKEW_Y] != 0.0f;
+    if (visibleQuadUsed) {
+      // The sign of the cross product of the first two edges
+      float cross = (quad[2] - quad[0]) * (quad[5] - quad[3]) -
+          (quad[3] - quad[1]) * (quad[4] - quad[2]);
+      visibleQuadOrientation = cross >= 0.0f ? 1.0f : -1.0f;
+    }
+
+    // The bounds of the quad
+    visibleRectF.set(
+        Math.min(Math.min(quad[0], quad[2]), Math.min(quad[4], quad[6])),
+        Math.min(Math.min(quad[1], quad[3]), Math.min(quad[5], quad[7])),
+        Math.max(Math.max(quad[0], quad[2]), Math.max(quad[4], quad[6])),
+        Math.max(Math.max(quad[1], quad[3]), Math.max(quad[5], quad[7])));
     visibleRectF.roundOut(visibleRect);
     if (!visibleRect.intersect(0, 0, width, height)) {
       visibleRect.setEmpty();
@@ -223,81 +465,228 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
     return visibleRect;
   }
 
-  // Gets the tile which is in full sample and contains this tile
-  private Tile getTheFullSampleTile(Tile tile) {
-    if (tile.sample == fullSample) {
-      return tile;
+  /**
+   * Returns {@code true} if the rect intersects the visible quad.
+   * The rect must intersect the visible rect, the bounds of the quad.
+   * <p>
+   * The quad is convex, they don't intersect only if all corners
+   * of the rect are outside of one of the quad edges.
+   */
+  private boolean intersectsVisibleQuad(int left, int top, int right, int bottom) {
+    if (!visibleQuadUsed) {
+      return true;
     }
-
-    for (Tile fullSampleTile : tilesMap.get(fullSample)) {
-      if (fullSampleTile.contains(tile)) {
-        return fullSampleTile;
+    float[] quad = visibleQuad;
+    for (int i = 0; i < 8; i += 2) {
+      float x = quad[i];
+      float y = quad[i + 1];
+      float dx = quad[(i + 2) & 7] - x;
+      float dy = quad[(i + 3) & 7] - y;
+      float o = visibleQuadOrientation;
+      if ((dx * (top - y) - dy * (left - x)) * o < 0.0f &&
+          (dx * (top - y) - dy * (right - x)) * o < 0.0f &&
+          (dx * (bottom - y) - dy * (left - x)) * o < 0.0f &&
+          (dx * (bottom - y) - dy * (right - x)) * o < 0.0f) {
+        return false;
       }
     }
+    return true;
+  }
+
+
+  // Updates the velocity of the visible rect
+  private void updateVelocity(Rect visibleRect, int currentSample) {
+    long now = SystemClock.uptimeMillis();
+    long interval = now - lastVisibleTime;
+    if (interval <= 0) {
+      // Same frame
+      return;
+    }
+
+    float centerX = visibleRect.exactCenterX();
+    float centerY = visibleRect.exactCenterY();
+    if (interval <= VELOCITY_TIMEOUT && currentSample == lastVisibleSample &&
+        !visibleRect.isEmpty()) {
+      // Smooth it a little
+      velocityX = (velocityX + (centerX - lastVisibleCenterX) / interval) / 2;
+      velocityY = (velocityY + (centerY - lastVisibleCenterY) / interval) / 2;
+    } else {
+      velocityX = 0;
+      velocityY = 0;
+    }
+
+    lastVisibleCenterX = centerX;
+    lastVisibleCenterY = centerY;
+    lastVisibleSample = currentSample;
+    lastVisibleTime = now;
+  }
+
+  // Gets the count of tiles to prefetch for the velocity in one direction
+  private int getPrefetchTileCount(float velocity, int step) {
+    float distance = Math.abs(velocity) * PREFETCH_LOOKAHEAD;
+    if (distance < step / 4) {
+      // Too slow
+      return 0;
+    }
+    return Math.min(prefetchMargin, (int) Math.ceil(distance / step));
+  }
+
+  // Prefetches tiles ahead of the motion in the level
+  private void prefetch(TileLevel level) {
+    if (prefetchMargin <= 0 || level.visibleLeft >= level.visibleRight ||
+        level.visibleTop >= level.visibleBottom) {
+      level.updatePrefetchRange(0, 0, 0, 0);
+      return;
+    }
+
+    int countX = getPrefetchTileCount(velocityX, level.step);
+    int countY = getPrefetchTileCount(velocityY, level.step);
+    level.updatePrefetchRange(
+        Math.max(0, level.visibleLeft - (velocityX < 0 ? countX : 0)),
+        Math.max(0, level.visibleTop - (velocityY < 0 ? countY : 0)),
+        Math.min(level.columns, level.visibleRight + (velocityX > 0 ? countX : 0)),
+        Math.min(level.rows, level.visibleBottom + (velocityY > 0 ? countY : 0)));
+  }
+
+  // Preloads visible tiles of the next smaller sample if it's zooming in
+  private void preload(Rect visibleRect, int currentSample) {
+    int preloadSample = 0;
+    if (currentSample > 1 && zoomInHintTime != 0 &&
+        SystemClock.uptimeMillis() - zoomInHintTime <= ZOOM_HINT_TIMEOUT) {
+      preloadSample = currentSample >> 1;
+    }
+
+    int oldPreloadSample = this.preloadSample;
+    this.preloadSample = preloadSample;
+    if (oldPreloadSample != 0 && oldPreloadSample != preloadSample &&
+        oldPreloadSample < currentSample) {
+      // Not used, recycle them
+      levelMap.get(oldPreloadSample).updateVisibleRange(null, true);
+    }
 
-    throw new RuntimeException("getTheFullSampleTile() should always returns a tile.");
+    if (preloadSample != 0) {
+      TileLevel level = getTileLevel(preloadSample);
+      level.updateVisibleRange(visibleRect, true);
+      Tile[] tiles = level.tiles;
+      byte[] states = level.states;
+      for (int row = level.visibleTop; row < level.visibleBottom; row++) {
+        for (int column = level.visibleLeft; column < level.visibleRight; column++) {
+          int i = row * level.columns + column;
+          if ((states[i] & TileLevel.STATE_VISIBLE) != 0) {
+            tiles[i].load(TileDecodeTask.PRIORITY_PREFETCH);
+          }
+        }
+      }
+    }
   }
 
   private void drawTiles(Canvas canvas) {
     // Get current sample
     int currentSample = getCurrentSample();
+    arrangeLevels(currentSample, fullSample);
 
-    // Get tile list for current sample
-    List<Tile> currentTileList = tilesMap.get(currentSample);
-    if (currentTileList == null) {
-      currentTileList = createTileList(currentSample);
-      tilesMap.put(currentSample, currentTileList);
-    }
+    // Get tile level for current sample
+    TileLevel currentLevel = getTileLevel(currentSample);
+    Tile[] currentTiles = currentLevel.tiles;
+    byte[] currentStates = currentLevel.states;
+    int columns = currentLevel.columns;
 
     // Get visible rect in the image
     Rect visibleRect = getVisibleRect();
+    updateVelocity(visibleRect, currentSample);
 
     if (currentSample == fullSample) {
       // Current sample is full sample
-      // No need to use the full sample tile to fill unloaded current sample tile
-      drawFullSampleTiles = false;
-
-      for (Tile tile : currentTileList) {
-        if (tile.updateVisibility(visibleRect)) {
-          tile.load();
-          tile.draw(canvas, paint, matrix, tempMatrix);
+      // No need to use ancestor tiles to fill unloaded current sample tile
+      currentLevel.updateVisibleRange(visibleRect, false);
+      for (int row = currentLevel.visibleTop; row < currentLevel.visibleBottom; row++) {
+        for (int column = currentLevel.visibleLeft; column < currentLevel.visibleRight;
+            column++) {
+          int i = row * columns + column;
+          if ((currentStates[i] & TileLevel.STATE_VISIBLE) != 0) {
+            Tile tile = currentTiles[i];
+            tile.load(TileDecodeTask.PRIORITY_VISIBLE);
+            tile.draw(canvas, paint, matrix, tempMatrix);
+          }
         }
       }
     } else {
       // Current sample is not full sample
-      // Use the full sample tile to fill unloaded current sample tile
-      drawFullSampleTiles = true;
+      // Use the nearest loaded ancestor tile to fill unloaded current sample tile
 
-      // Reset visibility of all tiles in full sample tiles
-      List<Tile> fullTileList = tilesMap.get(fullSample);
-      for (Tile tile : fullTileList) {
-        tile.setVisibility(false);
+      // Update visible tiles in ancestor samples, it resets the fallback flag
+      for (int sample = currentSample << 1; sample <= fullSample; sample <<= 1) {
+        getTileLevel(sample).updateVisibleRange(visibleRect, sample != fullSample);
       }
+      currentLevel.updateVisibleRange(visibleRect, true);
+      prefetch(currentLevel);
+
+      // Mark the ancestor tiles to draw
+      TileLevel parentLevel = levelMap.get(currentSample << 1);
+      for (int row = currentLevel.visibleTop; row < currentLevel.visibleBottom; row++) {
+        for (int column = currentLevel.visibleLeft; column < currentLevel.visibleRight;
+            column++) {
+          int i = row * columns + column;
+          if ((currentStates[i] & TileLevel.STATE_VISIBLE) == 0 || currentTiles[i].isLoaded()) {
+            continue;
+          }
+          currentTiles[i].load(TileDecodeTask.PRIORITY_VISIBLE);
+
+          // Find the nearest loaded ancestor
+          int parentIndex = currentLevel.parents[i];
+          TileLevel level = parentLevel;
+          int index = parentIndex;
+          while (!level.tiles[index].isLoaded()) {
+            if (level.sample >= fullSample) {
+              level = null;
+              break;
+            }
+            index = level.parents[index];
+            level = levelMap.get(level.sample << 1);
+          }
+          if (level != null) {
+            level.states[index] |= TileLevel.STATE_FALLBACK;
+          }
 
-      for (Tile tile : currentTileList) {
-        if (tile.updateVisibility(visibleRect)) {
-          if (tile.isLoaded()) {
-            // The tile has a bitmap, just draw it
-            tile.draw(canvas, paint, matrix, tempMatrix);
-          } else {
-            tile.load();
-            // The tile doesn't have a bitmap, try to draw a bitmap in full sample tile
-            Tile fullSampleTile = getTheFullSampleTile(tile);
-            // Use the visible to mark drew tile to avoid draw it twice
-            if (!fullSampleTile.isVisible()) {
-              fullSampleTile.setVisibility(true);
-              fullSampleTile.draw(canvas, paint, matrix, tempMatrix);
+          if (level != parentLevel) {
+            // Refine coarse-to-fine, the parent tile is the next one to show
+            parentLevel.tiles[parentIndex].load(TileDecodeTask.PRIORITY_PARENT);
+          }
+        }
+      }
+
+      // Draw ancestor tiles from coarse to fine, finer tiles cover coarser tiles
+      for (int sample = fullSample; sample > currentSample; sample >>= 1) {
+        TileLevel level = levelMap.get(sample);
+        byte[] states = level.states;
+        for (int row = level.visibleTop; row < level.visibleBottom; row++) {
+          for (int column = level.visibleLeft; column < level.visibleRight; column++) {
+            int i = row * level.columns + column;
+            if ((states[i] & TileLevel.STATE_FALLBACK) != 0) {
+              level.tiles[i].draw(canvas, paint, matrix, tempMatrix);
             }
           }
         }
       }
+
+      // Draw loaded current sample tiles at last
+      for (int row = currentLevel.visibleTop; row < currentLevel.visibleBottom; row++) {
+        for (int column = currentLevel.visibleLeft; column < currentLevel.visibleRight;
+            column++) {
+          int i = row * columns + column;
+          if ((currentStates[i] & TileLevel.STATE_VISIBLE) != 0) {
+            currentTiles[i].draw(canvas, paint, matrix, tempMatrix);
+          }
+        }
+      }
     }
 
-    gc();
+    preload(visibleRect, currentSample);
   }
 
   @Override
   public void draw(@Nonnull Canvas canvas) {
+    invalidatePending = false;
     if (windowWidth > 0 || windowHeight > 0 || maxTileSize > 0) {
       drawTiles(canvas);
     }
@@ -325,8 +714,36 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
 
   @Override
   public int getOpacity() {
-    // Always return PixelFormat.TRANSLUCENT
-    return PixelFormat.TRANSLUCENT;
+    return opaque && paint.getAlpha() == 0xff && isBoundsCovered()
+        ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+  }
+
+  // Returns true if the image covers the bounds and all full sample tiles are loaded
+  private boolean isBoundsCovered() {
+    if (windowWidth <= 0 || windowHeight <= 0) {
+      return false;
+    }
+
+    TileLevel fullLevel = levelMap.get(fullSample);
+    if (fullLevel == null) {
+      return false;
+    }
+    Tile[] tiles = fullLevel.tiles;
+    for (int i = 0, n = tiles.length; i < n; i++) {
+      if (!tiles[i].isLoaded()) {
+        return false;
+      }
+    }
+
+    // The window corners in the image must be in the image, it works for rotated images
+    getVisibleRect();
+    float[] quad = visibleQuad;
+    for (int i = 0; i < 8; i += 2) {
+      if (quad[i] < 0 || quad[i] > width || quad[i + 1] < 0 || quad[i + 1] > height) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
@@ -337,15 +754,11 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
   public void close() {
     releaser.release();
 
-    for (int i = 0, len = tilesMap.size(); i < len; i++) {
-      final List<Tile> list = tilesMap.valueAt(i);
-      if (list == null) {
-        continue;
-      }
-
+    for (int i = 0, len = levelMap.size(); i < len; i++) {
       // Close all tiles
-      for (Tile tile : list) {
-        tile.close();
+      final Tile[] tiles = levelMap.valueAt(i).tiles;
+      for (int j = 0, n = tiles.length; j < n; j++) {
+        tiles[j].close();
       }
     }
   }
@@ -370,64 +783,224 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
     }
   }
 
-  private class Tile {
-    public int sample;
-    public Rect rect;
-    public Bitmap bitmap;
-    // The task to decode image
-    private LoadingTask task;
-    //
-    private boolean visible;
-    // True if can't decode the source
-    // Check this flag to avoid infinity loading
-    private boolean failed;
-
-    public Tile(int sample, Rect rect) {
+  /**
+   * Tiles of a sample in row-major order. Tiles of all samples are aligned,
+   * so the tile containing a tile in the next sample is known by index,
+   * and the tiles intersecting a rect are a range of columns and rows.
+   * States are packed in an array to make per-frame loops cheap.
+   */
+  private class TileLevel {
+    // The tile intersects the visible rect
+    static final byte STATE_VISIBLE = 0x1;
+    // The tile is drawn to fill unloaded tiles with smaller sample
+    static final byte STATE_FALLBACK = 0x2;
+
+    final int sample;
+    final int step;
+    final int columns;
+    final int rows;
+    final Tile[] tiles;
+    final byte[] states;
+    // The index of the tile containing each tile in the level of double sample
+    final int[] parents;
+
+    // The range of visible tiles, right and bottom are exclusive
+    int visibleLeft;
+    int visibleTop;
+    int visibleRight;
+    int visibleBottom;
+    // The range of prefetched tiles, including visible tiles
+    int prefetchLeft;
+    int prefetchTop;
+    int prefetchRight;
+    int prefetchBottom;
+
+    TileLevel(int sample) {
       this.sample = sample;
-      this.rect = rect;
 
-      releaser.obtain();
+      step = maxTileSize * sample;
+      columns = ceilDiv(width, step);
+      rows = ceilDiv(height, step);
+      int parentColumns = ceilDiv(width, step * 2);
+      int count = columns * rows;
+      tiles = new Tile[count];
+      states = new byte[count];
+      parents = new int[count];
+
+      for (int row = 0, i = 0; row < rows; row++) {
+        for (int column = 0; column < columns; column++, i++) {
+          int left = column * step;
+          int top = row * step;
+          parents[i] = (row / 2) * parentColumns + column / 2;
+          tiles[i] = new Tile(this, i,
+              new Rect(left, top, Math.min(left + step, width), Math.min(top + step, height)));
+        }
+      }
     }
 
     /**
-     * Returns {@code true} if the rect contain that rect.
+     * Updates the range of visible tiles to the visible rect in the image,
+     * the fallback flag of visible tiles is cleared. Only tiles in the old range
+     * and the new range are visited. In the range, only tiles intersecting
+     * the visible quad are marked visible.
+     *
+     * @param visibleRect the visible rect, {@code null} for nothing visible
+     * @param recycleInvisible {@code true} to recycle tiles which become invisible
      */
-    public boolean contains(Tile tile) {
-      return rect.contains(tile.rect);
+    void updateVisibleRange(@Nullable Rect visibleRect, boolean recycleInvisible) {
+      int left = 0;
+      int top = 0;
+      int right = 0;
+      int bottom = 0;
+      if (visibleRect != null && !visibleRect.isEmpty()) {
+        left = visibleRect.left / step;
+        top = visibleRect.top / step;
+        right = Math.min(ceilDiv(visibleRect.right, step), columns);
+        bottom = Math.min(ceilDiv(visibleRect.bottom, step), rows);
+      }
+
+      // Tiles becoming invisible
+      for (int row = visibleTop; row < visibleBottom; row++) {
+        for (int column = visibleLeft; column < visibleRight; column++) {
+          if (column < left || column >= right || row < top || row >= bottom) {
+            int i = row * columns + column;
+            states[i] = 0;
+            if (recycleInvisible) {
+              tiles[i].recycle();
+            }
+          }
+        }
+      }
+
+      // Tiles in the range, only the ones intersecting the visible quad are visible
+      for (int row = top; row < bottom; row++) {
+        for (int column = left; column < right; column++) {
+          int i = row * columns + column;
+          Rect rect = tiles[i].rect;
+          if (intersectsVisibleQuad(rect.left, rect.top, rect.right, rect.bottom)) {
+            states[i] = STATE_VISIBLE;
+          } else {
+            if (recycleInvisible && (states[i] & STATE_VISIBLE) != 0) {
+              tiles[i].recycle();
+            }
+            states[i] = 0;
+          }
+        }
+      }
+
+      visibleLeft = left;
+      visibleTop = top;
+      visibleRight = right;
+      visibleBottom = bottom;
     }
 
     /**
-     * Update the visibility according to the visible rect in the image.
-     * Returns {@code true} if it's visible.
+     * Updates the range of prefetched tiles. Tiles in the range but out of the visible
+     * range are loaded with {@link TileDecodeTask#PRIORITY_PREFETCH}, invisible tiles
+     * leaving the range are recycled.
      */
-    public boolean updateVisibility(Rect visibleRect) {
-      visible = Rect.intersects(visibleRect, rect);
-      return visible;
+    void updatePrefetchRange(int left, int top, int right, int bottom) {
+      // Tiles leaving the range
+      for (int row = prefetchTop; row < prefetchBottom; row++) {
+        for (int column = prefetchLeft; column < prefetchRight; column++) {
+          if (column < left || column >= right || row < top || row >= bottom) {
+            int i = row * columns + column;
+            if ((states[i] & STATE_VISIBLE) == 0) {
+              tiles[i].recycle();
+            }
+          }
+        }
+      }
+
+      // Tiles in the range
+      for (int row = top; row < bottom; row++) {
+        for (int column = left; column < right; column++) {
+          if (column < visibleLeft || column >= visibleRight ||
+              row < visibleTop || row >= visibleBottom) {
+            tiles[row * columns + column].load(TileDecodeTask.PRIORITY_PREFETCH);
+          }
+        }
+      }
+
+      prefetchLeft = left;
+      prefetchTop = top;
+      prefetchRight = right;
+      prefetchBottom = bottom;
     }
 
-    /**
-     * Set the visibility.
-     */
-    public boolean setVisibility(boolean visible) {
-      this.visible = visible;
-      return visible;
+    void recycleInvisibleTiles() {
+      for (int i = 0, n = tiles.length; i < n; i++) {
+        if ((states[i] & STATE_VISIBLE) == 0) {
+          tiles[i].recycle();
+        }
+      }
+    }
+
+    void recycleAllTiles() {
+      updatePrefetchRange(0, 0, 0, 0);
+      updateVisibleRange(null, false);
+      for (int i = 0, n = tiles.length; i < n; i++) {
+        tiles[i].recycle();
+      }
+    }
+  }
+
+  private class Tile extends TileCache.Entry implements SharedTileStore.Callback {
+    private final TileLevel level;
+    private final int index;
+    public final int sample;
+    public final Rect rect;
+    public Bitmap bitmap;
+    // The tile in the store, it holds the task to decode image
+    private SharedTileStore.SharedTile shared;
+    // True if can't decode the source
+    // Check this flag to avoid infinity loading
+    private boolean failed;
+
+    public Tile(TileLevel level, int index, Rect rect) {
+      this.level = level;
+      this.index = index;
+      this.sample = level.sample;
+      this.rect = rect;
+
+      releaser.obtain();
     }
 
     /**
      * Returns {@code true} if it's visible.
      */
     public boolean isVisible() {
-      return visible;
+      return (level.states[index] & TileLevel.STATE_VISIBLE) != 0;
     }
 
     /**
-     * Starts a task to decode the image.
+     * Starts a task to decode the image. If the tile is loading
+     * with a lower priority and the task is still queued, its priority is raised.
+     * A running task is never restarted. If another drawable has decoded
+     * the tile, its bitmap is used.
      */
-    public void load() {
-      if (bitmap == null && task == null && !failed && releaser != null) {
-        task = new LoadingTask();
-        task.execute();
+    public void load(int priority) {
+      if (bitmap != null || failed || releaser == null) {
+        return;
       }
+      if (shared == null) {
+        shared = tileStore.obtain(sample, rect, this);
+        if (shared.bitmap != null || shared.failed) {
+          onTileDecoded(shared.bitmap);
+          return;
+        }
+      }
+
+      TileDecodeTask task = shared.task;
+      if (task != null) {
+        // Cancelling a running task would throw its decode away
+        scheduler.raisePriority(task, priority);
+        return;
+      }
+      task = new LoadingTask(shared, priority);
+      shared.task = task;
+      releaser.obtain();
+      scheduler.schedule(task);
     }
 
     /**
@@ -442,80 +1015,129 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
      */
     public void draw(Canvas canvas, Paint paint, Matrix matrix, Matrix temp) {
       if (bitmap != null) {
+        tileCache.touch(this);
+
         temp.set(matrix);
         temp.preTranslate(rect.left, rect.top);
+        // The bitmap is sampled
+        temp.preScale((float) rect.width() / bitmap.getWidth(),
+            (float) rect.height() / bitmap.getHeight());
         canvas.drawBitmap(bitmap, temp, paint);
 
         if (DEBUG) {
-          temp.preTranslate(-rect.left, -rect.top);
           debugRectF.set(rect);
-          temp.mapRect(debugRectF);
+          matrix.mapRect(debugRectF);
           canvas.drawRect(debugRectF, debugPaint);
         }
       }
     }
 
     /**
-     * Cancels loading task, recycles the bitmap.
+     * Releases the shared tile. The loading task is cancelled and
+     * the bitmap is released to the pool if no other drawable uses them.
      */
     public void recycle() {
-      if (task != null) {
-        task.cancel(false);
-        task = null;
+      if (shared != null) {
+        tileStore.release(shared, this);
+        shared = null;
       }
       if (bitmap != null) {
-        bitmap.recycle();
+        tileCache.remove(this);
         bitmap = null;
       }
     }
 
     /**
-     * Calls {@link #recycle()}. {@link #load()} will not work anymore.
+     * Calls {@link #recycle()}. {@link #load(int)} will not work anymore.
      */
     public void close() {
       recycle();
       releaser.release();
     }
 
-    private void onLoaded(Bitmap bitmap) {
+    // Full sample tiles are kept to fill the window, don't evict them
+    @Override
+    protected boolean isPinned() {
+      return sample == fullSample;
+    }
+
+    @Override
+    protected void onEvicted() {
+      recycle();
+    }
+
+    @Override
+    public void onTileDecoded(@Nullable Bitmap bitmap) {
       this.bitmap = bitmap;
-      this.task = null;
       this.failed = bitmap == null;
 
-      if (bitmap != null && visible &&
-          (sample == currentSample || (sample == fullSample && drawFullSampleTiles))) {
-        invalidateSelf();
+      if (bitmap != null) {
+        tileCache.put(this, BitmapUtil.getSizeInBytes(bitmap));
+      }
+
+      // Visible tiles from current sample to full sample are drawn
+      if (bitmap != null && isVisible() && sample >= currentSample && sample <= fullSample) {
+        invalidateOnce();
       }
     }
 
-    private class LoadingTask extends AsyncTask<Void, Void, Bitmap> {
-      @Override
-      protected void onPreExecute() {
-        releaser.obtain();
+    private class LoadingTask extends TileDecodeTask {
+
+      private final SharedTileStore.SharedTile shared;
+
+      public LoadingTask(SharedTileStore.SharedTile shared, int priority) {
+        super(priority);
+        this.shared = shared;
       }
 
       @Override
-      protected Bitmap doInBackground(Void... params) {
-        if (!isCancelled()) {
-          return decoder.decode(rect);
-        } else {
-          return null;
+      protected Bitmap decode() {
+        RegionDecodeOptions options = new RegionDecodeOptions();
+        options.inSampleSize = sample;
+        options.inPreferredConfig = tileConfig;
+        options.inBitmap = bitmapPool.get(RegionDecodeOptions.getSampledSize(rect.width(), sample),
+            RegionDecodeOptions.getSampledSize(rect.height(), sample), options.inPreferredConfig);
+        options.cancellationToken = this;
+
+        DiskTileCache diskTileCache = SubsamplingDrawable.this.diskTileCache;
+        String imageKey = SubsamplingDrawable.this.imageKey;
+        boolean useDiskCache = diskTileCache != null && imageKey != null;
+
+        Bitmap bitmap = null;
+        if (useDiskCache) {
+          bitmap = diskTileCache.get(imageKey, sample, rect, options.inBitmap);
+        }
+        if (bitmap == null) {
+          bitmap = ImageRegionDecoderCompat.decode(decoder, rect, options);
+          if (bitmap != null && useDiskCache) {
+            diskTileCache.put(imageKey, sample, rect, bitmap);
+          }
         }
+
+        if (options.inBitmap != null && options.inBitmap != bitmap) {
+          // The bitmap isn't used
+          bitmapPool.put(options.inBitmap);
+        }
+        if (bitmap != null) {
+          // Build drawing caches here, not on the frame which draws it first.
+          // With hardware acceleration, it starts uploading the texture.
+          bitmap.prepareToDraw();
+        }
+        return bitmap;
       }
 
       @Override
       protected void onPostExecute(Bitmap bitmap) {
         releaser.release();
-        onLoaded(bitmap);
+        // Notifies all drawables which show the tile
+        tileStore.onDecoded(shared, bitmap, bitmapPool);
       }
 
       @Override
       protected void onCancelled(Bitmap bitmap) {
         releaser.release();
-        // The cleanup task is done in recycle(), just recycle the bitmap
-        if (bitmap != null) {
-          bitmap.recycle();
-        }
+        // The cleanup task is done in recycle(), just release the bitmap
+        bitmapPool.put(bitmap);
       }
     }
   }
@@ -523,13 +1145,4 @@ public class SubsamplingDrawable extends Drawable implements DrawableWithCaches
   private static int ceilDiv(int a, int b) {
     return (a + b - 1) / b;
   }
-
-  private static int prevPow2(int n) {
-    n |= n >> 1;
-    n |= n >> 2;
-    n |= n >> 4;
-    n |= n >> 8;
-    n |= n >> 16;
-    return n - (n >> 1);
-  }
 }
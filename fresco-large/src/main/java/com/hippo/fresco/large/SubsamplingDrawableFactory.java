@@ -21,11 +21,37 @@ package com.hippo.fresco.large;
  */
 
 import android.graphics.drawable.Drawable;
+import javax.annotation.Nullable;
 
 public class SubsamplingDrawableFactory extends LargeDrawableFactory {
 
+  private final TileDecodeScheduler scheduler;
+  private final TileBitmapPool bitmapPool;
+  private final TileCache tileCache;
+  @Nullable
+  private final DiskTileCache diskTileCache;
+
+  public SubsamplingDrawableFactory() {
+    this(DefaultTileDecodeScheduler.getInstance(), TileBitmapPool.getInstance(),
+        TileCache.getInstance(), null);
+  }
+
+  public SubsamplingDrawableFactory(TileDecodeScheduler scheduler, TileBitmapPool bitmapPool,
+      TileCache tileCache, @Nullable DiskTileCache diskTileCache) {
+    this.scheduler = scheduler;
+    this.bitmapPool = bitmapPool;
+    this.tileCache = tileCache;
+    this.diskTileCache = diskTileCache;
+  }
+
   @Override
   public Drawable createLargeDrawable(ClosableLargeImage image) {
-    return new SubsamplingDrawable(image.getDecoder());
+    SubsamplingDrawable drawable = new SubsamplingDrawable(image.getDecoder(), scheduler,
+        bitmapPool, tileCache, image.isOpaque());
+    drawable.setTileStore(image.getTileStore());
+    if (diskTileCache != null) {
+      drawable.setDiskTileCache(diskTileCache, image.getImageKey());
+    }
+    return drawable;
   }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import com.facebook.imagepipeline.image.EncodedImage;
+
+/**
+ * Decides whether an image is decoded as a {@link ClosableLargeImage}
+ * or decoded fully. It's evaluated in {@link LargeImageDecoder} for every image
+ * of the registered formats, it might be called on different threads at the same time.
+ *
+ * @see SizeThresholdPolicy
+ * @see MemoryThresholdPolicy
+ */
+public interface ThresholdPolicy {
+
+  /**
+   * Returns {@code true} if the image should be decoded as a large image.
+   * <p>
+   * The {@code ImageDecodeOptions} of the request isn't passed. In Fresco 1.3
+   * it doesn't carry the bitmap config, which is set for the whole pipeline,
+   * so it can't tell the size of the decoded bitmap.
+   *
+   * @param width the width of the image, from the {@link ImageSizeDecoder}
+   * @param height the height of the image, from the {@link ImageSizeDecoder}
+   */
+  boolean isLargeEnough(EncodedImage encodedImage, int width, int height);
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.SparseArray;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmable;
+import com.facebook.imageutils.BitmapUtil;
+import java.util.ArrayDeque;
+import javax.annotation.Nullable;
+
+/**
+ * A pool of tile bitmaps, they could be used as {@code BitmapFactory.Options.inBitmap}.
+ * <p>
+ * Bitmaps are bucketed by allocation size. Before KitKat, only a bitmap
+ * with the same width, height and config could be reused. Since KitKat,
+ * the smallest bitmap which is big enough is reused, it's reconfigured
+ * to the requested width, height and config.
+ * <p>
+ * The pool holds at most {@code maxSize} bytes, the least recently
+ * released bitmaps are recycled first. It's thread-safe.
+ */
+public class TileBitmapPool implements MemoryTrimmable {
+
+  public static final int DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+  private static TileBitmapPool instance;
+
+  private final int maxSize;
+  private int size;
+
+  // Allocation size -> bitmaps, the last one is the most recently released
+  private final SparseArray<ArrayDeque<Bitmap>> buckets = new SparseArray<>();
+  // All bitmaps, the first one is the least recently released
+  private final ArrayDeque<Bitmap> lru = new ArrayDeque<>();
+
+  private int hitCount;
+  private int missCount;
+
+  public TileBitmapPool() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public TileBitmapPool(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns a bitmap with the width, height and config, it could be used
+   * as {@code inBitmap} to decode a bitmap of that size.
+   * Returns {@code null} if no bitmap matches.
+   */
+  @Nullable
+  public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+    int bytes = width * height * BitmapUtil.getPixelSizeForBitmapConfig(config);
+    boolean anySize = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    for (int i = 0, n = buckets.size(); i < n; i++) {
+      int key = buckets.keyAt(i);
+      if (key < bytes) {
+        continue;
+      }
+      if (key > bytes && !anySize) {
+        // Keys are in ascending order, no more exact match
+        break;
+      }
+
+      ArrayDeque<Bitmap> bucket = buckets.valueAt(i);
+      Bitmap bitmap = null;
+      if (anySize) {
+        bitmap = bucket.pollLast();
+      } else {
+        for (Bitmap candidate : bucket) {
+          if (candidate.getWidth() == width && candidate.getHeight() == height &&
+              candidate.getConfig() == config) {
+            bitmap = candidate;
+            break;
+          }
+        }
+        if (bitmap != null) {
+          bucket.remove(bitmap);
+        }
+      }
+
+      if (bitmap != null) {
+        lru.remove(bitmap);
+        size -= key;
+        ++hitCount;
+        if (anySize && (bitmap.getWidth() != width || bitmap.getHeight() != height ||
+            bitmap.getConfig() != config)) {
+          // Decoders keep the size of inBitmap, it must be the size of the region
+          bitmap.reconfigure(width, height, config);
+        }
+        return bitmap;
+      }
+    }
+
+    ++missCount;
+    return null;
+  }
+
+  /**
+   * Puts the bitmap to the pool, or recycles it if it can't be reused.
+   * The bitmap mustn't be used after this call.
+   */
+  public void put(@Nullable Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled()) {
+      return;
+    }
+    if (!bitmap.isMutable() || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+      // Can't be reused
+      bitmap.recycle();
+      return;
+    }
+
+    int bytes = BitmapUtil.getSizeInBytes(bitmap);
+    if (bytes > maxSize) {
+      bitmap.recycle();
+      return;
+    }
+
+    synchronized (this) {
+      ArrayDeque<Bitmap> bucket = buckets.get(bytes);
+      if (bucket == null) {
+        bucket = new ArrayDeque<>();
+        buckets.put(bytes, bucket);
+      }
+      bucket.addLast(bitmap);
+      lru.addLast(bitmap);
+      size += bytes;
+    }
+
+    trimToSize(maxSize);
+  }
+
+  /**
+   * Recycles bitmaps until the size of the pool is not bigger than {@code maxSize}.
+   */
+  public void trimToSize(int maxSize) {
+    while (true) {
+      Bitmap bitmap;
+      synchronized (this) {
+        if (size <= maxSize) {
+          break;
+        }
+        bitmap = lru.pollFirst();
+        if (bitmap == null) {
+          break;
+        }
+        int bytes = BitmapUtil.getSizeInBytes(bitmap);
+        ArrayDeque<Bitmap> bucket = buckets.get(bytes);
+        if (bucket != null) {
+          bucket.remove(bitmap);
+        }
+        size -= bytes;
+      }
+      bitmap.recycle();
+    }
+  }
+
+  /**
+   * Recycles all bitmaps.
+   */
+  public void clear() {
+    trimToSize(0);
+  }
+
+  @Override
+  public void trim(MemoryTrimType trimType) {
+    int targetSize;
+    synchronized (this) {
+      targetSize = (int) (size * (1 - trimType.getSuggestedTrimRatio()));
+    }
+    trimToSize(targetSize);
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public synchronized int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns how many times {@link #get(int, int, Bitmap.Config)} returns a bitmap.
+   */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns how many times {@link #get(int, int, Bitmap.Config)} returns {@code null}.
+   */
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the shared instance.
+   */
+  public static synchronized TileBitmapPool getInstance() {
+    if (instance == null) {
+      instance = new TileBitmapPool();
+    }
+    return instance;
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import com.facebook.common.memory.MemoryTrimType;
+import com.facebook.common.memory.MemoryTrimmable;
+
+/**
+ * Tracks bytes of loaded tiles in all {@link SubsamplingDrawable}s,
+ * evicts the least recently drawn tiles if it's over the budget.
+ * Pinned tiles, the full sample tiles of each drawable, are never evicted.
+ * Tiles drawn in the last {@link #IN_USE_TIMEOUT} milliseconds aren't evicted
+ * either, they would be decoded again in next frame. So the cache could go over
+ * the budget if all visible tiles don't fit.
+ * <p>
+ * All methods except {@link #trim(MemoryTrimType)} must be called on main thread.
+ */
+public class TileCache implements MemoryTrimmable {
+
+  /**
+   * Entries drawn or added in this time, in milliseconds, are in use.
+   */
+  public static final long IN_USE_TIMEOUT = 100;
+
+  private static TileCache instance;
+
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  private final int maxSize;
+  private int size;
+
+  // The least recently used entry
+  private Entry head;
+  // The most recently used entry
+  private Entry tail;
+
+  public TileCache() {
+    this(getDefaultMaxSize());
+  }
+
+  public TileCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns a quarter of the max heap size.
+   */
+  public static int getDefaultMaxSize() {
+    return (int) Math.min(Runtime.getRuntime().maxMemory() / 4, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Adds the entry as the most recently used one,
+   * evicts other entries if it's over the budget.
+   */
+  public void put(Entry entry, int sizeInBytes) {
+    remove(entry);
+
+    entry.sizeInBytes = sizeInBytes;
+    linkLast(entry);
+    size += sizeInBytes;
+
+    trimToSize(maxSize, entry);
+  }
+
+  /**
+   * Marks the entry as the most recently used one.
+   */
+  public void touch(Entry entry) {
+    if (entry.cached) {
+      if (entry != tail) {
+        unlink(entry);
+        linkLast(entry);
+      } else {
+        entry.useTime = SystemClock.uptimeMillis();
+      }
+    }
+  }
+
+  /**
+   * Removes the entry without calling {@link Entry#onEvicted()}.
+   */
+  public void remove(Entry entry) {
+    if (entry.cached) {
+      unlink(entry);
+      size -= entry.sizeInBytes;
+      entry.sizeInBytes = 0;
+    }
+  }
+
+  /**
+   * Evicts unpinned entries which aren't in use
+   * until the size is not bigger than {@code maxSize}.
+   */
+  public void trimToSize(int maxSize) {
+    trimToSize(maxSize, null);
+  }
+
+  private void trimToSize(int maxSize, Entry keep) {
+    long inUseTime = SystemClock.uptimeMillis() - IN_USE_TIMEOUT;
+    Entry entry = head;
+    // Entries are in the order of use time, all entries from the first
+    // one in use are in use, evicting them makes tiles flicker
+    while (size > maxSize && entry != null && entry.useTime < inUseTime) {
+      Entry next = entry.next;
+      if (entry != keep && !entry.isPinned()) {
+        remove(entry);
+        entry.onEvicted();
+      }
+      entry = next;
+    }
+  }
+
+  /**
+   * Trims the cache for {@code ComponentCallbacks2.onTrimMemory(int)}.
+   */
+  public void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+      // The app is in background, or the system is about to kill it
+      trimToSize(0);
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      trimToSize(size / 2);
+    }
+  }
+
+  @Override
+  public void trim(MemoryTrimType trimType) {
+    final double ratio = trimType.getSuggestedTrimRatio();
+    Runnable runnable = new Runnable() {
+      @Override
+      public void run() {
+        trimToSize((int) (size * (1 - ratio)));
+      }
+    };
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      runnable.run();
+    } else {
+      mainHandler.post(runnable);
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  private void linkLast(Entry entry) {
+    entry.prev = tail;
+    entry.next = null;
+    if (tail != null) {
+      tail.next = entry;
+    } else {
+      head = entry;
+    }
+    tail = entry;
+    entry.cached = true;
+    entry.useTime = SystemClock.uptimeMillis();
+  }
+
+  private void unlink(Entry entry) {
+    if (entry.prev != null) {
+      entry.prev.next = entry.next;
+    } else {
+      head = entry.next;
+    }
+    if (entry.next != null) {
+      entry.next.prev = entry.prev;
+    } else {
+      tail = entry.prev;
+    }
+    entry.prev = null;
+    entry.next = null;
+    entry.cached = false;
+  }
+
+  /**
+   * Returns the shared instance.
+   */
+  public static synchronized TileCache getInstance() {
+    if (instance == null) {
+      instance = new TileCache();
+    }
+    return instance;
+  }
+
+  /**
+   * An entry in the cache, it's linked in place to keep cache operations allocation free.
+   */
+  public abstract static class Entry {
+
+    private Entry prev;
+    private Entry next;
+    private boolean cached;
+    private int sizeInBytes;
+    // The last time it's drawn or added
+    private long useTime;
+
+    /**
+     * Returns {@code true} if the entry can't be evicted.
+     */
+    protected abstract boolean isPinned();
+
+    /**
+     * Called after the entry is evicted, releases the resources.
+     */
+    protected abstract void onEvicted();
+  }
+}
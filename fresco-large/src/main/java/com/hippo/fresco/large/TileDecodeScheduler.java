@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+/**
+ * Runs {@link TileDecodeTask}s for {@link SubsamplingDrawable}.
+ * <p>
+ * Implementations should run tasks with higher priority first,
+ * and should run tasks on background threads.
+ */
+public interface TileDecodeScheduler {
+
+  void schedule(TileDecodeTask task);
+
+  /**
+   * Raises the priority of the task if it's still waiting to run.
+   * A task which has started isn't touched, it's cheaper to let it finish.
+   *
+   * @return {@code true} if the priority is raised
+   */
+  boolean raisePriority(TileDecodeTask task, int priority);
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A task to decode a tile. {@link #decode()} is called on the thread of
+ * the {@link TileDecodeScheduler}, the result is delivered on main thread
+ * with other finished tasks in one batch per frame.
+ * <p>
+ * Tasks with higher priority run first. Tasks with the same priority run
+ * in LIFO order, the latest requested tile is the most likely to be visible.
+ * <p>
+ * A task is a {@link CancellationToken}, pass it to
+ * {@link RegionDecodeOptions#cancellationToken} to let the decoder
+ * give up the decode once the task is cancelled.
+ */
+public abstract class TileDecodeTask
+    implements Runnable, Comparable<TileDecodeTask>, CancellationToken {
+
+  /**
+   * Priority for tiles ahead of the motion, they aren't visible yet.
+   */
+  public static final int PRIORITY_PREFETCH = 0;
+  /**
+   * Priority for full sample tiles, they fill the window
+   * while current sample tiles are loading.
+   */
+  public static final int PRIORITY_FALLBACK = 1;
+  /**
+   * Priority for visible tiles in current sample.
+   */
+  public static final int PRIORITY_VISIBLE = 2;
+  /**
+   * Priority for the parent tiles of unloaded visible tiles.
+   * A parent tile covers four visible tiles, it's shown
+   * while they are loading, so it's decoded first.
+   */
+  public static final int PRIORITY_PARENT = 3;
+
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  private static final AtomicLong DECODE_TIME = new AtomicLong();
+  private static final AtomicLong WASTED_DECODE_TIME = new AtomicLong();
+
+  // Only changed while the task isn't in the queue of a scheduler
+  private int priority;
+  private final long sequence;
+  private volatile boolean cancelled;
+  private Bitmap result;
+  private long decodeTime;
+
+  public TileDecodeTask(int priority) {
+    this.priority = priority;
+    this.sequence = SEQUENCE.getAndIncrement();
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  /**
+   * Sets the priority. It must not be called while the task is
+   * in a priority queue, see {@link TileDecodeScheduler#raisePriority(TileDecodeTask, int)}.
+   */
+  public void setPriority(int priority) {
+    this.priority = priority;
+  }
+
+  /**
+   * Cancels the task. If the task hasn't been started, it will be dropped
+   * without decoding. Must be called on main thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public final void run() {
+    Bitmap bitmap = null;
+    if (!cancelled) {
+      long start = SystemClock.uptimeMillis();
+      bitmap = decode();
+      decodeTime = SystemClock.uptimeMillis() - start;
+      DECODE_TIME.addAndGet(decodeTime);
+    }
+    result = bitmap;
+    TileDeliveryBatcher.enqueue(this);
+  }
+
+  // Called on main thread by TileDeliveryBatcher
+  void deliver() {
+    Bitmap bitmap = result;
+    result = null;
+    if (cancelled) {
+      // The decode, finished or given up, is thrown away
+      WASTED_DECODE_TIME.addAndGet(decodeTime);
+      onCancelled(bitmap);
+    } else {
+      onPostExecute(bitmap);
+    }
+  }
+
+  /**
+   * Returns the total time spent in {@link #decode()} of all tasks, in milliseconds.
+   */
+  public static long getDecodeTime() {
+    return DECODE_TIME.get();
+  }
+
+  /**
+   * Returns the time spent in {@link #decode()} of cancelled tasks, in milliseconds.
+   * It's the part of {@link #getDecodeTime()} which is thrown away.
+   */
+  public static long getWastedDecodeTime() {
+    return WASTED_DECODE_TIME.get();
+  }
+
+  /**
+   * Resets {@link #getDecodeTime()} and {@link #getWastedDecodeTime()}.
+   */
+  public static void resetDecodeTime() {
+    DECODE_TIME.set(0);
+    WASTED_DECODE_TIME.set(0);
+  }
+
+  @Override
+  public int compareTo(TileDecodeTask another) {
+    if (priority != another.priority) {
+      return priority > another.priority ? -1 : 1;
+    }
+    if (sequence != another.sequence) {
+      return sequence > another.sequence ? -1 : 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Decodes the tile. Called on background thread.
+   * It could return {@code null} early if {@link #isCancelled()}.
+   */
+  @Nullable
+  protected abstract Bitmap decode();
+
+  /**
+   * Called on main thread if the task isn't cancelled.
+   */
+  protected abstract void onPostExecute(@Nullable Bitmap bitmap);
+
+  /**
+   * Called on main thread if the task is cancelled.
+   * The bitmap is {@code null} if the task is dropped without decoding.
+   */
+  protected abstract void onCancelled(@Nullable Bitmap bitmap);
+}
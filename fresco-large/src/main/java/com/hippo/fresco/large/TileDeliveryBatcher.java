@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers finished {@link TileDecodeTask}s to main thread in batches.
+ * <p>
+ * All tasks finished before a frame are delivered together at the start of
+ * the frame by a {@link Choreographer} callback, so many tiles landing together
+ * cost one main thread message, and drawables invalidated by them are drawn in
+ * that frame. Before Jelly Bean, batches are delivered by a {@link Handler}.
+ */
+final class TileDeliveryBatcher {
+  private TileDeliveryBatcher() {}
+
+  private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+  private static final Queue<TileDecodeTask> QUEUE = new ConcurrentLinkedQueue<>();
+  private static final AtomicBoolean SCHEDULED = new AtomicBoolean();
+
+  private static final Runnable DELIVER_RUNNABLE = new Runnable() {
+    @Override
+    public void run() {
+      deliverAll();
+    }
+  };
+
+  /**
+   * Adds the task to next batch. Could be called on any thread.
+   */
+  static void enqueue(TileDecodeTask task) {
+    QUEUE.add(task);
+    if (SCHEDULED.compareAndSet(false, true)) {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+        FrameCallback.INSTANCE.post();
+      } else {
+        MAIN_HANDLER.post(DELIVER_RUNNABLE);
+      }
+    }
+  }
+
+  /**
+   * Delivers all finished tasks now instead of at next frame, for tests.
+   * Returns {@code true} if any task is delivered. Must be called on main thread.
+   */
+  static boolean flush() {
+    boolean delivered = !QUEUE.isEmpty();
+    deliverAll();
+    return delivered;
+  }
+
+  private static void deliverAll() {
+    // Tasks enqueued from now on schedule next batch
+    SCHEDULED.set(false);
+    TileDecodeTask task;
+    while ((task = QUEUE.poll()) != null) {
+      task.deliver();
+    }
+  }
+
+  // Choreographer is only loaded on Jelly Bean and above
+  private static class FrameCallback implements Choreographer.FrameCallback {
+
+    static final FrameCallback INSTANCE = new FrameCallback();
+
+    // Choreographer.getInstance() returns the instance for the calling thread,
+    // so it's obtained on main thread
+    private final Runnable postRunnable = new Runnable() {
+      @Override
+      public void run() {
+        Choreographer.getInstance().postFrameCallback(FrameCallback.this);
+      }
+    };
+
+    void post() {
+      if (Looper.myLooper() == Looper.getMainLooper()) {
+        postRunnable.run();
+      } else {
+        MAIN_HANDLER.post(postRunnable);
+      }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      deliverAll();
+    }
+  }
+}
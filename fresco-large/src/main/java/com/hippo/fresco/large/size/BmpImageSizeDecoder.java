@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.size;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the size from the DIB header of a BMP image.
+ */
+public class BmpImageSizeDecoder extends HeaderImageSizeDecoder {
+
+  // The size of BITMAPCOREHEADER, it has 16-bit width and height
+  private static final int CORE_HEADER_SIZE = 12;
+
+  @Nullable
+  @Override
+  protected int[] readSize(InputStream is) throws IOException {
+    if (!readTag(is, "BM")) {
+      return null;
+    }
+    // Skip file size, reserved and pixel data offset
+    skip(is, 12);
+    int headerSize = readInt32LE(is);
+    int width;
+    int height;
+    if (headerSize == CORE_HEADER_SIZE) {
+      width = readUInt16LE(is);
+      height = readUInt16LE(is);
+    } else if (headerSize > CORE_HEADER_SIZE) {
+      width = readInt32LE(is);
+      // Negative for top-down bitmaps
+      height = Math.abs(readInt32LE(is));
+    } else {
+      return null;
+    }
+    return new int[] {width, height};
+  }
+}
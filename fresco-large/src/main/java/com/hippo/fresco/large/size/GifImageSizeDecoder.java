@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.size;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the logical screen size of a GIF image.
+ */
+public class GifImageSizeDecoder extends HeaderImageSizeDecoder {
+
+  @Nullable
+  @Override
+  protected int[] readSize(InputStream is) throws IOException {
+    if (!readTag(is, "GIF8")) {
+      return null;
+    }
+    int version = readUInt8(is);
+    if ((version != '7' && version != '9') || readUInt8(is) != 'a') {
+      return null;
+    }
+    int width = readUInt16LE(is);
+    int height = readUInt16LE(is);
+    return new int[] {width, height};
+  }
+}
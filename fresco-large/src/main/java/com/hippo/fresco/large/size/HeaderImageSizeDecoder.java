@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.size;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import android.util.Pair;
+import com.facebook.imageformat.DefaultImageFormats;
+import com.facebook.imageformat.ImageFormat;
+import com.facebook.imagepipeline.image.EncodedImage;
+import com.hippo.fresco.large.ImageSizeDecoder;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link ImageSizeDecoder} which reads the size from the header of the image.
+ * <p>
+ * {@link EncodedImage#parseMetaData()} runs the format checker and
+ * {@code BitmapFactory} on the image. The header is usually in the first
+ * few hundred bytes, reading it is much cheaper. Returns {@code null}
+ * if the header can't be read.
+ */
+public abstract class HeaderImageSizeDecoder implements ImageSizeDecoder {
+
+  private static final HeaderImageSizeDecoder JPEG = new JpegImageSizeDecoder();
+  private static final HeaderImageSizeDecoder PNG = new PngImageSizeDecoder();
+  private static final HeaderImageSizeDecoder WEBP = new WebpImageSizeDecoder();
+  private static final HeaderImageSizeDecoder GIF = new GifImageSizeDecoder();
+  private static final HeaderImageSizeDecoder BMP = new BmpImageSizeDecoder();
+
+  /**
+   * Returns the header size decoder for the format in {@link DefaultImageFormats},
+   * or {@code null} if the format isn't supported.
+   */
+  @Nullable
+  public static HeaderImageSizeDecoder forImageFormat(ImageFormat imageFormat) {
+    if (imageFormat == DefaultImageFormats.JPEG) {
+      return JPEG;
+    } else if (imageFormat == DefaultImageFormats.PNG) {
+      return PNG;
+    } else if (imageFormat == DefaultImageFormats.WEBP_SIMPLE ||
+        imageFormat == DefaultImageFormats.WEBP_LOSSLESS ||
+        imageFormat == DefaultImageFormats.WEBP_EXTENDED ||
+        imageFormat == DefaultImageFormats.WEBP_EXTENDED_WITH_ALPHA ||
+        imageFormat == DefaultImageFormats.WEBP_ANIMATED) {
+      return WEBP;
+    } else if (imageFormat == DefaultImageFormats.GIF) {
+      return GIF;
+    } else if (imageFormat == DefaultImageFormats.BMP) {
+      return BMP;
+    } else {
+      return null;
+    }
+  }
+
+  @Nullable
+  @Override
+  public Pair<Integer, Integer> decode(EncodedImage encodedImage, int length) {
+    // The meta data might be parsed in the pipeline
+    int width = encodedImage.getWidth();
+    int height = encodedImage.getHeight();
+    if (width > 0 && height > 0) {
+      return new Pair<>(width, height);
+    }
+
+    InputStream is = encodedImage.getInputStream();
+    if (is == null) {
+      return null;
+    }
+    try {
+      int[] size = readSize(is);
+      if (size != null && size[0] > 0 && size[1] > 0) {
+        return new Pair<>(size[0], size[1]);
+      }
+      return null;
+    } catch (IOException e) {
+      return null;
+    } finally {
+      try {
+        is.close();
+      } catch (IOException e) {
+        // Ignore
+      }
+    }
+  }
+
+  /**
+   * Reads the size from the beginning of the image.
+   *
+   * @return {@code [width, height]}, or {@code null} if it's not a valid header
+   */
+  @Nullable
+  protected abstract int[] readSize(InputStream is) throws IOException;
+
+  static int readUInt8(InputStream is) throws IOException {
+    int b = is.read();
+    if (b < 0) {
+      throw new EOFException();
+    }
+    return b;
+  }
+
+  static int readUInt16BE(InputStream is) throws IOException {
+    return (readUInt8(is) << 8) | readUInt8(is);
+  }
+
+  static int readUInt16LE(InputStream is) throws IOException {
+    return readUInt8(is) | (readUInt8(is) << 8);
+  }
+
+  static int readUInt24LE(InputStream is) throws IOException {
+    return readUInt8(is) | (readUInt8(is) << 8) | (readUInt8(is) << 16);
+  }
+
+  static int readInt32BE(InputStream is) throws IOException {
+    return (readUInt8(is) << 24) | (readUInt8(is) << 16) | (readUInt8(is) << 8) | readUInt8(is);
+  }
+
+  static int readInt32LE(InputStream is) throws IOException {
+    return readUInt8(is) | (readUInt8(is) << 8) | (readUInt8(is) << 16) | (readUInt8(is) << 24);
+  }
+
+  /**
+   * Returns {@code true} if the next bytes are the ASCII string.
+   */
+  static boolean readTag(InputStream is, String tag) throws IOException {
+    for (int i = 0, n = tag.length(); i < n; i++) {
+      if (readUInt8(is) != tag.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static void skip(InputStream is, long count) throws IOException {
+    while (count > 0) {
+      long skipped = is.skip(count);
+      if (skipped > 0) {
+        count -= skipped;
+      } else {
+        // skip() might do nothing before the end
+        readUInt8(is);
+        --count;
+      }
+    }
+  }
+}
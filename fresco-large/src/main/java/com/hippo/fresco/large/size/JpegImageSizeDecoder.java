@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.size;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the size from the SOF segment of a JPEG image.
+ * Segments before it, like EXIF, are skipped without reading.
+ */
+public class JpegImageSizeDecoder extends HeaderImageSizeDecoder {
+
+  private static final int MARKER_FIRST_BYTE = 0xFF;
+  private static final int MARKER_SOI = 0xD8;
+  private static final int MARKER_EOI = 0xD9;
+  private static final int MARKER_SOS = 0xDA;
+  private static final int MARKER_TEM = 0x01;
+  private static final int MARKER_RST0 = 0xD0;
+  private static final int MARKER_RST7 = 0xD7;
+
+  @Nullable
+  @Override
+  protected int[] readSize(InputStream is) throws IOException {
+    if (readUInt8(is) != MARKER_FIRST_BYTE || readUInt8(is) != MARKER_SOI) {
+      return null;
+    }
+
+    while (true) {
+      if (readUInt8(is) != MARKER_FIRST_BYTE) {
+        return null;
+      }
+      int marker;
+      do {
+        // Skip fill bytes
+        marker = readUInt8(is);
+      } while (marker == MARKER_FIRST_BYTE);
+
+      if (marker == MARKER_SOI || marker == MARKER_TEM ||
+          (marker >= MARKER_RST0 && marker <= MARKER_RST7)) {
+        // No payload
+        continue;
+      }
+      if (marker == MARKER_EOI || marker == MARKER_SOS) {
+        // No SOF before image data
+        return null;
+      }
+
+      int length = readUInt16BE(is);
+      if (length < 2) {
+        return null;
+      }
+      if (isSofMarker(marker)) {
+        // Skip sample precision
+        readUInt8(is);
+        int height = readUInt16BE(is);
+        int width = readUInt16BE(is);
+        return new int[] {width, height};
+      }
+      skip(is, length - 2);
+    }
+  }
+
+  // SOF0 to SOF15, except DHT, JPG and DAC
+  private static boolean isSofMarker(int marker) {
+    return marker >= 0xC0 && marker <= 0xCF &&
+        marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.size;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the size from the IHDR chunk of a PNG image, it's always the first chunk.
+ */
+public class PngImageSizeDecoder extends HeaderImageSizeDecoder {
+
+  private static final int[] SIGNATURE = {0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+  @Nullable
+  @Override
+  protected int[] readSize(InputStream is) throws IOException {
+    for (int b : SIGNATURE) {
+      if (readUInt8(is) != b) {
+        return null;
+      }
+    }
+    // Skip the chunk length
+    skip(is, 4);
+    if (!readTag(is, "IHDR")) {
+      return null;
+    }
+    int width = readInt32BE(is);
+    int height = readInt32BE(is);
+    return new int[] {width, height};
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.size;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the size from the first chunk of a WebP image,
+ * one of {@code VP8 } (lossy), {@code VP8L} (lossless) and {@code VP8X} (extended).
+ */
+public class WebpImageSizeDecoder extends HeaderImageSizeDecoder {
+
+  private static final int VP8L_SIGNATURE = 0x2F;
+
+  @Nullable
+  @Override
+  protected int[] readSize(InputStream is) throws IOException {
+    if (!readTag(is, "RIFF")) {
+      return null;
+    }
+    // Skip the file size
+    skip(is, 4);
+    if (!readTag(is, "WEBP") || !readTag(is, "VP8")) {
+      return null;
+    }
+    int type = readUInt8(is);
+    // Skip the chunk size
+    skip(is, 4);
+
+    int width;
+    int height;
+    switch (type) {
+      case ' ':
+        // Skip the frame tag, then check the start code
+        skip(is, 3);
+        if (readUInt8(is) != 0x9D || readUInt8(is) != 0x01 || readUInt8(is) != 0x2A) {
+          return null;
+        }
+        // The high 2 bits are the scale
+        width = readUInt16LE(is) & 0x3FFF;
+        height = readUInt16LE(is) & 0x3FFF;
+        break;
+      case 'L':
+        if (readUInt8(is) != VP8L_SIGNATURE) {
+          return null;
+        }
+        // 14 bits for width - 1, then 14 bits for height - 1
+        int bits = readInt32LE(is);
+        width = (bits & 0x3FFF) + 1;
+        height = ((bits >> 14) & 0x3FFF) + 1;
+        break;
+      case 'X':
+        // Skip flags and reserved bytes
+        skip(is, 4);
+        width = readUInt24LE(is) + 1;
+        height = readUInt24LE(is) + 1;
+        break;
+      default:
+        return null;
+    }
+    return new int[] {width, height};
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import static com.hippo.fresco.large.SizeThresholdPolicyTest.encodedImage;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MemoryThresholdPolicyTest {
+
+  private static final long MAX_HEAP = 64 * 1024 * 1024;
+
+  // A quarter of 64 MB is exactly 2048 x 2048 ARGB_8888 pixels
+  private final ThresholdPolicy policy = new MemoryThresholdPolicy(4096, 0.25f, 4, MAX_HEAP);
+
+  @Test
+  public void fitHeap() {
+    assertFalse(policy.isLargeEnough(encodedImage(1), 2048, 2048));
+    assertFalse(policy.isLargeEnough(encodedImage(1), 4096, 1024));
+  }
+
+  @Test
+  public void overHeap() {
+    assertTrue(policy.isLargeEnough(encodedImage(1), 2049, 2048));
+    assertTrue(policy.isLargeEnough(encodedImage(1), 4096, 1025));
+  }
+
+  @Test
+  public void overTexture() {
+    assertTrue(policy.isLargeEnough(encodedImage(1), 4097, 1));
+    assertTrue(policy.isLargeEnough(encodedImage(1), 1, 4097));
+  }
+
+  @Test
+  public void sampleSize() {
+    // Decoded as 2048 x 2048
+    assertFalse(policy.isLargeEnough(encodedImage(2), 4096, 4096));
+    assertFalse(policy.isLargeEnough(encodedImage(2), 4097, 4097));
+    assertTrue(policy.isLargeEnough(encodedImage(2), 4098, 4098));
+    // Decoded as 4096 x 1, fits the texture
+    assertFalse(policy.isLargeEnough(encodedImage(4), 16384, 4));
+  }
+
+  @Test
+  public void bytesPerPixel() {
+    ThresholdPolicy rgb565 = new MemoryThresholdPolicy(4096, 0.25f, 2, MAX_HEAP);
+    assertFalse(rgb565.isLargeEnough(encodedImage(1), 4096, 2048));
+    assertTrue(rgb565.isLargeEnough(encodedImage(1), 4096, 2049));
+  }
+
+  @Test
+  public void heapLimit() {
+    ThresholdPolicy smallHeap = new MemoryThresholdPolicy(4096, 0.25f, 4, MAX_HEAP / 4);
+    assertTrue(smallHeap.isLargeEnough(encodedImage(1), 2048, 2048));
+    assertFalse(smallHeap.isLargeEnough(encodedImage(1), 1024, 1024));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import static com.hippo.fresco.large.SampleCalculator.BIAS_BALANCED;
+import static com.hippo.fresco.large.SampleCalculator.BIAS_MEMORY;
+import static com.hippo.fresco.large.SampleCalculator.BIAS_QUALITY;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SampleCalculatorTest {
+
+  // Values of a matrix, see android.graphics.Matrix#getValues(float[])
+  private static float[] matrix(float scaleX, float skewX, float skewY, float scaleY) {
+    return new float[] {scaleX, skewX, 0, skewY, scaleY, 0, 0, 0, 1};
+  }
+
+  private static float[] scale(float scale) {
+    return matrix(scale, 0, 0, scale);
+  }
+
+  private static float[] rotate(float degrees, float scale) {
+    double radians = Math.toRadians(degrees);
+    float cos = (float) (Math.cos(radians) * scale);
+    float sin = (float) (Math.sin(radians) * scale);
+    return matrix(cos, -sin, sin, cos);
+  }
+
+  private static void assertSamples(float[] matrix, int quality, int balanced, int memory) {
+    assertEquals(quality, SampleCalculator.calculateSample(matrix, BIAS_QUALITY));
+    assertEquals(balanced, SampleCalculator.calculateSample(matrix, BIAS_BALANCED));
+    assertEquals(memory, SampleCalculator.calculateSample(matrix, BIAS_MEMORY));
+  }
+
+  @Test
+  public void identity() {
+    assertSamples(scale(1.0f), 1, 1, 1);
+  }
+
+  @Test
+  public void zoomIn() {
+    assertSamples(scale(3.0f), 1, 1, 1);
+  }
+
+  @Test
+  public void powerOfTwo() {
+    assertSamples(scale(1.0f / 2), 2, 2, 2);
+    assertSamples(scale(1.0f / 4), 4, 4, 4);
+    assertSamples(scale(1.0f / 16), 16, 16, 16);
+  }
+
+  @Test
+  public void inBetween() {
+    assertSamples(scale(1.0f / 1.3f), 1, 1, 2);
+    assertSamples(scale(1.0f / 1.9f), 1, 2, 2);
+    assertSamples(scale(1.0f / 2.7f), 2, 2, 4);
+    assertSamples(scale(1.0f / 3.0f), 2, 4, 4);
+    assertSamples(scale(1.0f / 7.5f), 4, 8, 8);
+  }
+
+  @Test
+  public void rotated() {
+    assertSamples(rotate(90, 1.0f / 4), 4, 4, 4);
+    // MSCALE_X is 0.35 here, the true scale is 0.5
+    assertSamples(rotate(45, 1.0f / 2), 2, 2, 2);
+    assertSamples(rotate(30, 1.0f / 1.9f), 1, 2, 2);
+    assertSamples(rotate(-135, 1.0f / 8), 8, 8, 8);
+  }
+
+  @Test
+  public void nonUniform() {
+    // The larger scale wins
+    assertSamples(matrix(1.0f / 2, 0, 0, 1.0f / 4), 2, 2, 2);
+    assertSamples(matrix(1.0f / 8, 0, 0, 1.0f / 1.9f), 1, 2, 2);
+  }
+
+  @Test
+  public void degenerate() {
+    assertSamples(scale(0.0f), 1 << 30, 1 << 30, 1 << 30);
+    assertEquals(1, SampleCalculator.calculateSample(Float.NaN, BIAS_BALANCED));
+    assertEquals(1, SampleCalculator.calculateSample(0.5f, BIAS_MEMORY));
+  }
+
+  @Test
+  public void fit() {
+    assertEquals(16,
+        SampleCalculator.calculateFitSample(30000, 20000, 1080, 1920, BIAS_QUALITY));
+    assertEquals(32,
+        SampleCalculator.calculateFitSample(30000, 20000, 1080, 1920, BIAS_BALANCED));
+    assertEquals(1,
+        SampleCalculator.calculateFitSample(800, 600, 1080, 1920, BIAS_BALANCED));
+    assertEquals(2,
+        SampleCalculator.calculateFitSample(2160, 1000, 1080, 1920, BIAS_QUALITY));
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.common.internal.Supplier;
+import com.facebook.imagepipeline.image.EncodedImage;
+import java.io.FileInputStream;
+import org.junit.Test;
+
+public class SizeThresholdPolicyTest {
+
+  // The policies only read the sample size, the content is never opened
+  static EncodedImage encodedImage(int sampleSize) {
+    EncodedImage image = new EncodedImage(new Supplier<FileInputStream>() {
+      @Override
+      public FileInputStream get() {
+        return null;
+      }
+    });
+    image.setSampleSize(sampleSize);
+    return image;
+  }
+
+  private final ThresholdPolicy policy = new SizeThresholdPolicy(1024, 768);
+
+  @Test
+  public void notBigger() {
+    assertFalse(policy.isLargeEnough(encodedImage(1), 1024, 768));
+    assertFalse(policy.isLargeEnough(encodedImage(1), 1, 1));
+  }
+
+  @Test
+  public void bigger() {
+    assertTrue(policy.isLargeEnough(encodedImage(1), 1025, 768));
+    assertTrue(policy.isLargeEnough(encodedImage(1), 1024, 769));
+  }
+
+  @Test
+  public void ignoreSampleSize() {
+    // The threshold is for the image size, not the decoded size
+    assertTrue(policy.isLargeEnough(encodedImage(4), 2048, 100));
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.fresco.large.size;
+
+/*
+ * Created by Hippo on 10/17/2026.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+public class HeaderImageSizeDecoderTest {
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    for (byte[] array : arrays) {
+      os.write(array, 0, array.length);
+    }
+    return os.toByteArray();
+  }
+
+  private static byte[] ascii(String string) {
+    byte[] bytes = new byte[string.length()];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) string.charAt(i);
+    }
+    return bytes;
+  }
+
+  private static int[] readSize(HeaderImageSizeDecoder decoder, byte[] data) throws IOException {
+    return decoder.readSize(new ByteArrayInputStream(data));
+  }
+
+  @Test
+  public void jpeg() throws IOException {
+    byte[] data = concat(
+        // SOI
+        bytes(0xFF, 0xD8),
+        // APP1, 6 bytes of payload
+        bytes(0xFF, 0xE1, 0x00, 0x08, 1, 2, 3, 4, 5, 6),
+        // DHT looks like SOF but isn't
+        bytes(0xFF, 0xC4, 0x00, 0x03, 0),
+        // Fill bytes, then SOF2 of 6000x4000
+        bytes(0xFF, 0xFF, 0xC2, 0x00, 0x11, 8, 0x0F, 0xA0, 0x17, 0x70));
+    assertArrayEquals(new int[] {6000, 4000}, readSize(new JpegImageSizeDecoder(), data));
+  }
+
+  @Test
+  public void jpeg_noSof() throws IOException {
+    byte[] data = bytes(0xFF, 0xD8, 0xFF, 0xDA, 0x00, 0x02);
+    assertNull(readSize(new JpegImageSizeDecoder(), data));
+    assertNull(readSize(new JpegImageSizeDecoder(), bytes(0x89, 'P')));
+  }
+
+  @Test
+  public void png() throws IOException {
+    byte[] data = concat(
+        bytes(0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'),
+        bytes(0, 0, 0, 13), ascii("IHDR"),
+        bytes(0x00, 0x00, 0x4E, 0x20, 0x00, 0x00, 0x01, 0x00));
+    assertArrayEquals(new int[] {20000, 256}, readSize(new PngImageSizeDecoder(), data));
+  }
+
+  @Test
+  public void gif() throws IOException {
+    byte[] data = concat(ascii("GIF89a"), bytes(0x40, 0x01, 0xF0, 0x00));
+    assertArrayEquals(new int[] {320, 240}, readSize(new GifImageSizeDecoder(), data));
+    assertNull(readSize(new GifImageSizeDecoder(), ascii("GIF88a1234")));
+  }
+
+  @Test
+  public void bmp() throws IOException {
+    byte[] info = concat(ascii("BM"), new byte[12], bytes(40, 0, 0, 0),
+        // Width 1024, height -768 for top-down
+        bytes(0x00, 0x04, 0x00, 0x00), bytes(0x00, 0xFD, 0xFF, 0xFF));
+    assertArrayEquals(new int[] {1024, 768}, readSize(new BmpImageSizeDecoder(), info));
+
+    byte[] core = concat(ascii("BM"), new byte[12], bytes(12, 0, 0, 0),
+        bytes(0x10, 0x00, 0x20, 0x00));
+    assertArrayEquals(new int[] {16, 32}, readSize(new BmpImageSizeDecoder(), core));
+  }
+
+  @Test
+  public void webp() throws IOException {
+    byte[] lossy = concat(ascii("RIFF"), new byte[4], ascii("WEBPVP8 "), new byte[4],
+        // Frame tag, start code, 16383x1 with scale bits set
+        new byte[3], bytes(0x9D, 0x01, 0x2A), bytes(0xFF, 0xFF, 0x01, 0xC0));
+    assertArrayEquals(new int[] {16383, 1}, readSize(new WebpImageSizeDecoder(), lossy));
+
+    // 14 bits of 1999, then 14 bits of 2999
+    int bits = 1999 | (2999 << 14);
+    byte[] lossless = concat(ascii("RIFF"), new byte[4], ascii("WEBPVP8L"), new byte[4],
+        bytes(0x2F, bits & 0xFF, (bits >> 8) & 0xFF, (bits >> 16) & 0xFF, (bits >> 24) & 0xFF));
+    assertArrayEquals(new int[] {2000, 3000}, readSize(new WebpImageSizeDecoder(), lossless));
+
+    byte[] extended = concat(ascii("RIFF"), new byte[4], ascii("WEBPVP8X"), new byte[4],
+        new byte[4], bytes(0x3F, 0x9C, 0x00), bytes(0x1F, 0x4E, 0x00));
+    assertArrayEquals(new int[] {40000, 20000}, readSize(new WebpImageSizeDecoder(), extended));
+  }
+
+  @Test
+  public void truncated() {
+    byte[] data = bytes(0xFF, 0xD8, 0xFF, 0xC0, 0x00, 0x11, 8);
+    try {
+      readSize(new JpegImageSizeDecoder(), data);
+    } catch (IOException e) {
+      // Expected, decode() returns null for it
+      return;
+    }
+    throw new AssertionError("No exception");
+  }
+}